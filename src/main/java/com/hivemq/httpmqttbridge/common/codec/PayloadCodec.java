@@ -0,0 +1,108 @@
+package com.hivemq.httpmqttbridge.common.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Payload compression codecs. The codec name is carried in the {@code content-encoding} user
+ * property of the MQTT 5 PUBLISH so subscribers can detect and reverse it. Speed is traded for
+ * ratio through the deflate level of the encoder, the receiving side does not need to know it.
+ */
+public enum PayloadCodec {
+  NONE {
+    @Override
+    OutputStream wrap(OutputStream out, int level) {
+      return out;
+    }
+
+    @Override
+    InputStream unwrap(InputStream in) {
+      return in;
+    }
+  },
+  GZIP {
+    @Override
+    OutputStream wrap(OutputStream out, int level) throws IOException {
+      return new LeveledGzipOutputStream(out, level);
+    }
+
+    @Override
+    InputStream unwrap(InputStream in) throws IOException {
+      return new GZIPInputStream(in);
+    }
+  };
+
+  public static final String CONTENT_ENCODING_PROPERTY = "content-encoding";
+
+  abstract OutputStream wrap(OutputStream out, int level) throws IOException;
+
+  abstract InputStream unwrap(InputStream in) throws IOException;
+
+  public String encodingName() {
+    return name().toLowerCase();
+  }
+
+  public static PayloadCodec fromEncodingName(String encodingName) {
+    for (PayloadCodec codec : values()) {
+      if (codec.encodingName().equalsIgnoreCase(encodingName)) {
+        return codec;
+      }
+    }
+    return NONE;
+  }
+
+  public byte[] encode(byte[] payload) {
+    return encode(payload, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Encodes at the given deflate level, from {@link Deflater#BEST_SPEED} to
+   * {@link Deflater#BEST_COMPRESSION} or {@link Deflater#DEFAULT_COMPRESSION}.
+   */
+  public byte[] encode(byte[] payload, int level) {
+    if (this == NONE) {
+      return payload;
+    }
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length / 2 + 16);
+    try (OutputStream out = wrap(buffer, level)) {
+      out.write(payload);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to " + encodingName() + " encode payload", e);
+    }
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Reverses the codec, failing as soon as more than {@code maxDecodedBytes} come out so a small
+   * payload cannot expand without bound.
+   */
+  public byte[] decode(byte[] payload, int maxDecodedBytes) {
+    if (this == NONE) {
+      return payload;
+    }
+    try (InputStream in = unwrap(new ByteArrayInputStream(payload))) {
+      byte[] decoded = in.readNBytes(maxDecodedBytes);
+      if (in.read() != -1) {
+        throw new IOException("Decoded payload exceeds " + maxDecodedBytes + " bytes");
+      }
+      return decoded;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to " + encodingName() + " decode payload", e);
+    }
+  }
+
+  private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+
+    private LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+      super(out);
+      def.setLevel(level);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.hivemq.httpmqttbridge.common.codec;
+
+import static com.hivemq.httpmqttbridge.common.codec.PayloadCodec.CONTENT_ENCODING_PROPERTY;
+
+import com.hivemq.client.mqtt.datatypes.MqttTopic;
+import com.hivemq.client.mqtt.datatypes.MqttTopicFilter;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.config.MqttProperties.CompressionRule;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the payload codec and level per broker and topic from {@code mqtt.compression.rules}
+ * and reverses it for received messages marked with a {@code content-encoding} user property.
+ * Payloads that cannot be decoded, or decode to more than
+ * {@code mqtt.compression.max-decoded-bytes}, are passed on as received.
+ */
+
+@Component
+@Slf4j
+public class PayloadCompressor {
+
+  private final int minSizeBytes;
+  private final int maxDecodedBytes;
+  private final List<CompiledRule> rules;
+
+  public PayloadCompressor(MqttProperties mqttProperties) {
+    MqttProperties.Compression compression = mqttProperties.getCompression();
+    this.minSizeBytes = compression.getMinSizeBytes();
+    this.maxDecodedBytes = compression.getMaxDecodedBytes();
+    this.rules = compression.getRules().stream().map(CompiledRule::of).toList();
+  }
+
+  public Encoding encodingFor(Long brokerId, String topic, int payloadSize) {
+    if (rules.isEmpty() || payloadSize < minSizeBytes) {
+      return Encoding.NONE;
+    }
+    MqttTopic mqttTopic = MqttTopic.of(topic);
+    for (CompiledRule rule : rules) {
+      if ((rule.brokerId() == null || rule.brokerId().equals(brokerId))
+          && rule.topicFilter().matches(mqttTopic)) {
+        return rule.encoding();
+      }
+    }
+    return Encoding.NONE;
+  }
+
+  public byte[] decode(Mqtt5Publish publish, byte[] payload) {
+    PayloadCodec codec = publish.getUserProperties().asList().stream()
+        .filter(property -> CONTENT_ENCODING_PROPERTY.equals(property.getName().toString()))
+        .findFirst()
+        .map(property -> PayloadCodec.fromEncodingName(property.getValue().toString()))
+        .orElse(PayloadCodec.NONE);
+    try {
+      return codec.decode(payload, maxDecodedBytes);
+    } catch (UncheckedIOException e) {
+      log.warn("Passing on undecodable payload of topic {}: {}", publish.getTopic(),
+          e.getCause().getMessage());
+      return payload;
+    }
+  }
+
+  /**
+   * Codec and deflate level a publish is encoded with.
+   */
+  public record Encoding(PayloadCodec codec, int level) {
+
+    public static final Encoding NONE =
+        new Encoding(PayloadCodec.NONE, Deflater.DEFAULT_COMPRESSION);
+
+    public byte[] encode(byte[] payload) {
+      return codec.encode(payload, level);
+    }
+  }
+
+  private record CompiledRule(Long brokerId, MqttTopicFilter topicFilter, Encoding encoding) {
+
+    private static CompiledRule of(CompressionRule rule) {
+      return new CompiledRule(rule.getBrokerId(), MqttTopicFilter.of(rule.getTopicFilter()),
+          new Encoding(rule.getCodec(), rule.getLevel()));
+    }
+  }
+}
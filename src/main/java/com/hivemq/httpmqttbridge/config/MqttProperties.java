@@ -1,21 +1,205 @@
 package com.hivemq.httpmqttbridge.config;
 
 import com.hivemq.httpmqttbridge.brokerconfig.domain.MqttBrokerCredentials;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCodec;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
 
 @Setter
 @Getter
 @Configuration
 @ConfigurationProperties(prefix = "mqtt")
+@Validated
 public class MqttProperties {
 
   public static final Long DEFAULT_BROKER_ID = 0L;
 
   private Map<Long, MqttBrokerCredentials> brokers = new HashMap<>();
 
+  @Valid
+  private Compression compression = new Compression();
+
+  @Valid
+  private Publisher publisher = new Publisher();
+
+  @Setter
+  @Getter
+  public static class Publisher {
+
+    /**
+     * QoS of publishes that do not set their own, checked at startup.
+     */
+    @Min(0)
+    @Max(2)
+    private int qos = 1;
+
+    /**
+     * Retain flag of publishes that do not set their own.
+     */
+    private boolean retain;
+
+    /**
+     * Syntax-check JSON bodies before forwarding them unchanged.
+     */
+    private boolean validateJson = true;
+
+    private Batch batch = new Batch();
+
+    private Queue queue = new Queue();
+
+    private Outbox outbox = new Outbox();
+
+    private Status status = new Status();
+
+    private Stream stream = new Stream();
+  }
+
+  @Setter
+  @Getter
+  public static class Batch {
+
+    /**
+     * Messages one batch publish request may carry.
+     */
+    private int maxSize = 1000;
+  }
+
+  @Setter
+  @Getter
+  public static class Queue {
+
+    /**
+     * Sends publishes through a bounded per-broker queue instead of straight to the client.
+     */
+    private boolean enabled;
+
+    private int capacity = 10000;
+
+    private int batchSize = 100;
+
+    /**
+     * Publishes sent to a broker but not yet acknowledged by it.
+     */
+    private int maxInflight = 1000;
+
+    /**
+     * Retry-After of publishes rejected by a full queue.
+     */
+    private long retryAfterSeconds = 1;
+
+    /**
+     * Queued publishes the broker has not acknowledged by then fail.
+     */
+    private long sendTimeoutMs = 10000;
+  }
+
+  @Setter
+  @Getter
+  public static class Outbox {
+
+    /**
+     * Stores publishes that fail while their broker is unreachable and replays them later.
+     */
+    private boolean enabled;
+
+    private String directory = "./data/outbox";
+
+    private int segmentSizeBytes = 16 * 1024 * 1024;
+
+    private int maxSegmentsPerBroker = 64;
+
+    /**
+     * Forces each record to disk before the publish is answered.
+     */
+    private boolean syncOnAppend;
+
+    private int replayBatchSize = 500;
+
+    private long replayIntervalMs = 100;
+
+    /**
+     * Replayed records not acknowledged by then are sent again on the next run.
+     */
+    private long replayTimeoutMs = 10000;
+  }
+
+  @Setter
+  @Getter
+  public static class Status {
+
+    /**
+     * Outcomes of asynchronously accepted publishes kept at most.
+     */
+    private int maxEntries = 100000;
+
+    private long ttlMs = 300000;
+  }
+
+  @Setter
+  @Getter
+  public static class Stream {
+
+    /**
+     * Reads from an NDJSON upload pause while this many publishes await broker acks.
+     */
+    private int maxInflight = 256;
+
+    private int maxLineBytes = 1024 * 1024;
+
+    private long drainTimeoutMs = 10000;
+
+    private long publishTimeoutMs = 5000;
+  }
+
+  @Setter
+  @Getter
+  public static class Compression {
+
+    /**
+     * Payloads smaller than this are sent uncompressed.
+     */
+    private int minSizeBytes = 256;
+
+    /**
+     * Received payloads that decompress to more than this are passed on still compressed.
+     */
+    private int maxDecodedBytes = 16 * 1024 * 1024;
+
+    /**
+     * First matching rule decides the codec of a publish, no match means no compression.
+     */
+    private List<@Valid CompressionRule> rules = new ArrayList<>();
+  }
+
+  @Setter
+  @Getter
+  public static class CompressionRule {
+
+    /**
+     * Broker the rule applies to, all brokers when absent.
+     */
+    private Long brokerId;
+
+    private String topicFilter = "#";
+
+    private PayloadCodec codec = PayloadCodec.GZIP;
+
+    /**
+     * Deflate level of the codec, 1 is fastest, 9 compresses best and -1 is the zlib default (6).
+     */
+    @Min(-1)
+    @Max(9)
+    private int level = -1;
+  }
+
 }
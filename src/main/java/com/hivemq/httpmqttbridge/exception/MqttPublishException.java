@@ -7,6 +7,6 @@ public class MqttPublishException extends RuntimeException {
   }
 
   public MqttPublishException(String message, Throwable cause) {
-    super(message);
+    super(message, cause);
   }
 }
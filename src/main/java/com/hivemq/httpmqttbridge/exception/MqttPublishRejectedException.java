@@ -0,0 +1,14 @@
+package com.hivemq.httpmqttbridge.exception;
+
+import lombok.Getter;
+
+@Getter
+public class MqttPublishRejectedException extends RuntimeException {
+
+  private final long retryAfterSeconds;
+
+  public MqttPublishRejectedException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+}
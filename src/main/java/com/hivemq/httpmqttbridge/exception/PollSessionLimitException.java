@@ -0,0 +1,8 @@
+package com.hivemq.httpmqttbridge.exception;
+
+public class PollSessionLimitException extends RuntimeException {
+
+  public PollSessionLimitException(int maxSessions) {
+    super("Session limit of " + maxSessions + " reached.");
+  }
+}
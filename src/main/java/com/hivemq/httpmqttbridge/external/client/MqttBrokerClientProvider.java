@@ -6,6 +6,18 @@ public interface MqttBrokerClientProvider<T> {
 
   CompletableFuture<T> getClient(Long brokerId);
 
+  /**
+   * Returns the pooled client responsible for the topic. The same topic always maps to the same
+   * client so per-topic ordering is kept.
+   */
+  CompletableFuture<T> getClient(Long brokerId, String topic);
+
+  /**
+   * Returns the client dedicated to the MQTT 5 shared subscriptions of one share group. It is not
+   * used for publishing or plain subscriptions.
+   */
+  CompletableFuture<T> getSharedSubscriptionClient(Long brokerId, String group);
+
   void evict(Long brokerId);
 
 }
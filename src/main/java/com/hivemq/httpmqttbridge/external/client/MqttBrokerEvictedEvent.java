@@ -0,0 +1,9 @@
+package com.hivemq.httpmqttbridge.external.client;
+
+/**
+ * Published after the clients of a broker have been evicted, so state kept per broker can be
+ * released along with them.
+ */
+public record MqttBrokerEvictedEvent(Long brokerId) {
+
+}
@@ -2,9 +2,11 @@ package com.hivemq.httpmqttbridge.external.client.hivemq;
 
 import static com.hivemq.httpmqttbridge.config.MqttProperties.DEFAULT_BROKER_ID;
 
+import com.hivemq.client.mqtt.exceptions.ConnectionFailedException;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.connect.Mqtt5Connect;
 import com.hivemq.httpmqttbridge.brokerconfig.domain.MqttBroker;
 import com.hivemq.httpmqttbridge.brokerconfig.domain.MqttBrokerCredentials;
 import com.hivemq.httpmqttbridge.brokerconfig.service.MqttBrokerService;
@@ -12,6 +14,7 @@ import com.hivemq.httpmqttbridge.config.MqttProperties;
 import com.hivemq.httpmqttbridge.exception.MqttBrokerNotFoundException;
 import com.hivemq.httpmqttbridge.exception.MqttPublishException;
 import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,13 +22,20 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 /**
- * Client Provider for HiveMQ MQTT brokers. Creates client per broker and manages their
- * connections.
+ * Client Provider for HiveMQ MQTT brokers. Keeps a pool of {@code mqtt.client.pool-size} clients
+ * per broker and manages their connections. Each pool member connects, reconnects and is health
+ * checked on its own; topics are striped over the members by hash. Shared subscriptions of each
+ * share group get a separate client outside the pool. All clients share the threads of
+ * {@link MqttClientExecutors}. Evicting a broker disconnects its clients and publishes a
+ * {@link MqttBrokerEvictedEvent}.
  */
 
 @Component
@@ -34,19 +44,34 @@ import org.springframework.stereotype.Component;
 public class HiveMqttClientProvider implements MqttBrokerClientProvider<Mqtt5AsyncClient> {
 
   private final MqttBrokerService mqttBrokerService;
-  private final ConcurrentMap<Long, Mqtt5AsyncClient> clients = new ConcurrentHashMap<>();
-  private final ConcurrentMap<Long, CompletableFuture<Mqtt5AsyncClient>> connects = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ClientKey, Mqtt5AsyncClient> clients = new ConcurrentHashMap<>();
+  private final ConcurrentMap<ClientKey, CompletableFuture<Mqtt5AsyncClient>> connects = new ConcurrentHashMap<>();
   private final MqttProperties mqttProperties;
+  private final MqttClientExecutors mqttClientExecutors;
+  private final ApplicationEventPublisher eventPublisher;
 
-  private static Mqtt5AsyncClient build(MqttBroker mqttBroker) {
+  @Value("${mqtt.client.pool-size:1}")
+  private int poolSize;
+
+  // 16 is the client library's own default, enough for the hottest topics of a bridge connection
+  @Value("${mqtt.client.topic-alias-maximum:16}")
+  private int topicAliasMaximum;
+
+  @Value("${mqtt.subscription.flow-control.receive-maximum:65535}")
+  private int receiveMaximum;
+
+  private Mqtt5AsyncClient build(MqttBroker mqttBroker, ClientKey key) {
     Mqtt5ClientBuilder mqtt5ClientBuilder = Mqtt5Client.builder()
         .identifier("http-bridge-" + UUID.randomUUID()).serverHost(mqttBroker.hostName())
-        .serverPort(mqttBroker.port()).automaticReconnect().initialDelay(1, TimeUnit.SECONDS)
+        .serverPort(mqttBroker.port()).executorConfig(mqttClientExecutors.executorConfig())
+        .automaticReconnect().initialDelay(1, TimeUnit.SECONDS)
         .maxDelay(30, TimeUnit.SECONDS).applyAutomaticReconnect().addDisconnectedListener(ctx -> {
-          log.warn("Disconnected from broker (host={} port={}), reason={}", mqttBroker.hostName(),
-              mqttBroker.port(), ctx.getCause().getMessage());
+          log.warn("Disconnected from broker (host={} port={} member={}), reason={}",
+              mqttBroker.hostName(), mqttBroker.port(), key.member(), ctx.getCause().getMessage());
           ctx.getReconnector().reconnect(true);
-        });
+        }).addConnectedListener(
+            ctx -> log.debug("Pool member {} connected to broker {}", key.member(),
+                key.brokerId()));
     boolean tls = mqttBroker.port() == 8883 || mqttBroker.port() == 443;
     if (tls) {
       mqtt5ClientBuilder = mqtt5ClientBuilder.sslWithDefaultConfig();
@@ -56,11 +81,27 @@ public class HiveMqttClientProvider implements MqttBrokerClientProvider<Mqtt5Asy
 
   @Override
   public CompletableFuture<Mqtt5AsyncClient> getClient(Long brokerId) {
-    Mqtt5AsyncClient existing = clients.get(brokerId);
+    return getClient(new ClientKey(brokerId, 0, null));
+  }
+
+  @Override
+  public CompletableFuture<Mqtt5AsyncClient> getClient(Long brokerId, String topic) {
+    return getClient(new ClientKey(brokerId, Math.floorMod(topic.hashCode(), poolSize()), null));
+  }
+
+  @Override
+  public CompletableFuture<Mqtt5AsyncClient> getSharedSubscriptionClient(Long brokerId,
+      String group) {
+    return getClient(new ClientKey(brokerId, 0, group));
+  }
+
+  private CompletableFuture<Mqtt5AsyncClient> getClient(ClientKey key) {
+    Long brokerId = key.brokerId();
+    Mqtt5AsyncClient existing = clients.get(key);
     if (existing != null && existing.getState().isConnected()) {
       return CompletableFuture.completedFuture(existing);
     }
-    CompletableFuture<Mqtt5AsyncClient> inflight = connects.get(brokerId);
+    CompletableFuture<Mqtt5AsyncClient> inflight = connects.get(key);
     if (inflight != null) {
       return inflight;
     }
@@ -73,55 +114,93 @@ public class HiveMqttClientProvider implements MqttBrokerClientProvider<Mqtt5Asy
     MqttBroker mqttBroker = mqttBrokerOptional.get();
 
     CompletableFuture<Mqtt5AsyncClient> start = new CompletableFuture<>();
-    CompletableFuture<Mqtt5AsyncClient> previous = connects.putIfAbsent(brokerId, start);
+    CompletableFuture<Mqtt5AsyncClient> previous = connects.putIfAbsent(key, start);
     if (previous != null) {
       return previous;
     }
 
-    Mqtt5AsyncClient client = clients.computeIfAbsent(brokerId, id -> build(mqttBroker));
+    Mqtt5AsyncClient client = clients.computeIfAbsent(key, id -> build(mqttBroker, key));
 
     MqttBrokerCredentials credentials = mqttProperties.getBrokers()
         .getOrDefault(brokerId, mqttProperties.getBrokers().get(DEFAULT_BROKER_ID));
-    connectClient(brokerId, client, credentials, start, mqttBroker);
+    connectClient(key, client, credentials, start, mqttBroker);
     return start;
 
   }
 
-  private void connectClient(Long brokerId, Mqtt5AsyncClient client,
+  private void connectClient(ClientKey key, Mqtt5AsyncClient client,
       MqttBrokerCredentials credentials, CompletableFuture<Mqtt5AsyncClient> start,
       MqttBroker mqttBroker) {
-    client.connectWith().cleanStart(true).simpleAuth().username(credentials.userName())
-        .password(credentials.password().getBytes(StandardCharsets.UTF_8)).applySimpleAuth().send()
-        .orTimeout(7, TimeUnit.SECONDS).whenComplete((ack, ex) -> {
-          connects.remove(brokerId);
+    client.connect(connectMessage(credentials))
+        .orTimeout(7, TimeUnit.SECONDS)
+        .whenComplete((ack, ex) -> {
+          connects.remove(key);
           if (ex != null) {
-            log.error("Failed to connect to broker {}", brokerId, ex);
+            log.error("Failed to connect pool member {} to broker {}", key.member(),
+                key.brokerId(), ex);
+            // Nothing was sent yet, so a timeout only means the broker is unreachable
+            Throwable cause = ex instanceof TimeoutException
+                ? new ConnectionFailedException("Timed out connecting to broker") : ex;
             start.completeExceptionally(
-                new MqttPublishException("Exception connecting to broker ID " + brokerId, ex));
+                new MqttPublishException("Exception connecting to broker ID " + key.brokerId(),
+                    cause));
             return;
           }
 
-          log.info("Connected to broker {} (host={} port={})", brokerId, mqttBroker.hostName(),
-              mqttBroker.port());
-          clients.put(brokerId, client);
+          log.info("Connected to broker {} (host={} port={} member={} topicAliasMaximum={})",
+              key.brokerId(), mqttBroker.hostName(), mqttBroker.port(), key.member(),
+              Math.min(topicAliasMaximum, ack.getRestrictions().getTopicAliasMaximum()));
+          clients.put(key, client);
           start.complete(client);
         });
   }
 
+  private Mqtt5Connect connectMessage(MqttBrokerCredentials credentials) {
+    // The client assigns outgoing topic aliases to its most frequently used topics and evicts
+    // cold ones, within the lower of this maximum and the broker's topic-alias-maximum. The
+    // receive maximum caps the QoS 1/2 messages the broker sends before they are acknowledged
+    return Mqtt5Connect.builder()
+        .cleanStart(true)
+        .restrictions()
+        .sendTopicAliasMaximum(Math.max(0, Math.min(topicAliasMaximum, 65535)))
+        .receiveMaximum(Math.max(1, Math.min(receiveMaximum, 65535)))
+        .applyRestrictions()
+        .simpleAuth()
+        .username(credentials.userName())
+        .password(credentials.password().getBytes(StandardCharsets.UTF_8))
+        .applySimpleAuth()
+        .build();
+  }
+
   @Override
   public void evict(Long brokerId) {
-    CompletableFuture<Mqtt5AsyncClient> inflight = connects.remove(brokerId);
-    if (inflight != null) {
-      inflight.cancel(true);
-    }
-    Mqtt5AsyncClient client = clients.remove(brokerId);
-    if (client != null) {
+    connects.entrySet().removeIf(entry -> {
+      if (!entry.getKey().brokerId().equals(brokerId)) {
+        return false;
+      }
+      entry.getValue().cancel(true);
+      return true;
+    });
+    clients.entrySet().removeIf(entry -> {
+      if (!entry.getKey().brokerId().equals(brokerId)) {
+        return false;
+      }
       try {
-        client.disconnect();
+        entry.getValue().disconnect();
       } catch (Exception e) {
         log.warn("Error disconnecting client for brokerId={}: {}", brokerId, e.getMessage());
       }
-    }
+      return true;
+    });
+    eventPublisher.publishEvent(new MqttBrokerEvictedEvent(brokerId));
+  }
+
+  private int poolSize() {
+    return Math.max(1, poolSize);
+  }
+
+  private record ClientKey(Long brokerId, int member, String group) {
+
   }
 
 }
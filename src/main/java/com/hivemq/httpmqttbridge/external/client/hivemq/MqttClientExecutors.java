@@ -0,0 +1,85 @@
+package com.hivemq.httpmqttbridge.external.client.hivemq;
+
+import com.hivemq.client.mqtt.MqttClientExecutorConfig;
+import io.reactivex.schedulers.Schedulers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Threads shared by every HiveMQ client of the bridge. All clients run their network I/O on one
+ * event loop group of {@code mqtt.client.executor.netty-threads} and complete their futures and
+ * publish callbacks on a separate pool of {@code mqtt.client.executor.callback-threads}, so the
+ * thread count does not grow with the number of brokers or pool members and work done in
+ * callbacks never stalls the I/O threads.
+ */
+
+@Component
+@Slf4j
+public class MqttClientExecutors {
+
+  @Value("${mqtt.client.executor.netty-threads:0}")
+  private int nettyThreads;
+
+  @Value("${mqtt.client.executor.callback-threads:0}")
+  private int callbackThreads;
+
+  private ExecutorService nettyExecutor;
+
+  private ExecutorService callbackExecutor;
+
+  private MqttClientExecutorConfig executorConfig;
+
+  @PostConstruct
+  void start() {
+    int ioThreads = threads(nettyThreads);
+    int applicationThreads = threads(callbackThreads);
+    nettyExecutor = Executors.newFixedThreadPool(ioThreads, threadFactory("mqtt-netty-"));
+    callbackExecutor = Executors.newFixedThreadPool(applicationThreads,
+        threadFactory("mqtt-callback-"));
+    // Clients given the same netty executor share a single event loop group
+    executorConfig = MqttClientExecutorConfig.builder().nettyExecutor(nettyExecutor)
+        .nettyThreads(ioThreads).applicationScheduler(Schedulers.from(callbackExecutor)).build();
+    log.info("MQTT clients share {} I/O threads and {} callback threads", ioThreads,
+        applicationThreads);
+  }
+
+  @PreDestroy
+  void stop() {
+    callbackExecutor.shutdownNow();
+    nettyExecutor.shutdownNow();
+  }
+
+  /**
+   * Executor layout every client is built with.
+   */
+  public MqttClientExecutorConfig executorConfig() {
+    return executorConfig;
+  }
+
+  /**
+   * Pool for publish callbacks registered on a client, keeping them off the I/O threads.
+   */
+  public ExecutorService callbackExecutor() {
+    return callbackExecutor;
+  }
+
+  private static int threads(int configured) {
+    return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+  }
+
+  private static ThreadFactory threadFactory(String prefix) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -1,22 +1,40 @@
 package com.hivemq.httpmqttbridge.publish.controller;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
 import com.hivemq.httpmqttbridge.exception.MqttPublishInputException;
+import com.hivemq.httpmqttbridge.exception.MqttPublishRejectedException;
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
 import com.hivemq.httpmqttbridge.publish.response.PublishResponse;
 import com.hivemq.httpmqttbridge.publish.response.PublishStatus;
+import com.hivemq.httpmqttbridge.publish.response.PublishStreamResponse;
 import com.hivemq.httpmqttbridge.publish.service.MqttPublisherService;
+import com.hivemq.httpmqttbridge.publish.service.MqttStreamPublisherService;
+import com.hivemq.httpmqttbridge.publish.service.PublishStatusTracker;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 /**
  * REST controller publish request to Mqtt broker. Provides endpoint to send messages to specified
@@ -30,37 +48,204 @@ import org.springframework.web.bind.annotation.RestController;
 public class MqttPublishController {
 
   private static final String REQUEST_ID_HEADER = "x-request-id";
+  private static final String PREFER_HEADER = "Prefer";
+  private static final String RESPOND_ASYNC = "respond-async";
+  private static final long PUBLISH_TIMEOUT_SECONDS = 8;
   private final MqttPublisherService hiveMqttPublisherService;
+  private final MqttStreamPublisherService mqttStreamPublisherService;
+  private final PublishStatusTracker publishStatusTracker;
+  private final ObjectMapper objectMapper;
+  private final MqttProperties mqttProperties;
 
-  @PostMapping(path = "/{brokerId}/send/{topic:.+}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  @PostMapping(path = "/{brokerId}/send/{topic:.+}", consumes = {MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_OCTET_STREAM_VALUE}, produces = MediaType.APPLICATION_JSON_VALUE)
   @Tag(name = "Publish Messages", description = "API to publish messages to MQTT brokers")
   public CompletableFuture<ResponseEntity<PublishResponse>> publishMessage(
       @PathVariable Long brokerId, @PathVariable String topic,
       @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId,
-      @RequestBody Object body) {
+      @RequestHeader(value = HttpHeaders.CONTENT_TYPE) String contentType,
+      @RequestHeader(value = PREFER_HEADER, required = false) String prefer,
+      @RequestParam(required = false) Integer qos,
+      @RequestParam(required = false) Boolean retain,
+      @RequestBody byte[] body) {
     log.debug("MqttPublishRequest - BrokerId: {}, Topic: {}, RequestId: {}", brokerId, topic,
         requestId);
     validateTopic(topic, requestId);
     final String publishRequestId = requestId == null ? UUID.randomUUID().toString() : requestId;
-    return hiveMqttPublisherService.publish(brokerId, topic, body, publishRequestId)
-        .orTimeout(8, java.util.concurrent.TimeUnit.SECONDS).thenApply(
-            __ -> ResponseEntity.ok().header(REQUEST_ID_HEADER, publishRequestId).body(
-                PublishResponse.builder().brokerId(brokerId).topic(topic)
-                    .status(PublishStatus.PUBLISHED).build())).exceptionally(ex -> {
-          Throwable cause = (ex.getCause() != null) ? ex.getCause() : ex;
-
-          if (cause instanceof MqttPublishInputException e) {
-            log.error(
-                "MqttPublishRequest - Input validation failed for BrokerId: {}, Topic: {}, RequestId: {}, Reason: {}",
-                brokerId, topic, publishRequestId, e.getMessage());
-            return ResponseEntity.badRequest().header(REQUEST_ID_HEADER, publishRequestId).body(
+    // Request bytes are forwarded as the MQTT payload as-is, JSON is only checked for syntax
+    if (mqttProperties.getPublisher().isValidateJson()
+        && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType))
+        && !isWellFormedJson(body)) {
+      log.error("MqttPublishRequest - Malformed JSON payload for BrokerId: {}, RequestId: {}",
+          brokerId, publishRequestId);
+      return CompletableFuture.completedFuture(
+          ResponseEntity.badRequest().header(REQUEST_ID_HEADER, publishRequestId).body(
+              PublishResponse.builder().brokerId(brokerId).topic(topic)
+                  .status(PublishStatus.FAILED).failureReason("Malformed JSON payload").build()));
+    }
+    if (qos != null && (qos < 0 || qos > 2)) {
+      log.error("MqttPublishRequest - Invalid qos: {} for request - {} ", qos, publishRequestId);
+      return CompletableFuture.completedFuture(
+          ResponseEntity.badRequest().header(REQUEST_ID_HEADER, publishRequestId).body(
+              PublishResponse.builder().brokerId(brokerId).topic(topic)
+                  .status(PublishStatus.FAILED).failureReason("Invalid qos: must be 0, 1 or 2")
+                  .build()));
+    }
+    CompletableFuture<PublishStatus> publish = qos == null && retain == null
+        ? hiveMqttPublisherService.publish(brokerId, topic, body, publishRequestId)
+        : hiveMqttPublisherService.publish(brokerId, MqttPublishMessageRequest.builder()
+            .topic(topic).payload(body).qos(qos).retain(retain).build(), publishRequestId);
+
+    if (publish.isCompletedExceptionally()) {
+      // Rejected before sending, e.g. by a full publish queue, so report it now instead of 202
+      return toResponseEntity(publish, brokerId, topic, publishRequestId);
+    }
+    boolean respondAsync = prefer != null && prefer.contains(RESPOND_ASYNC);
+    if ((qos != null ? qos : mqttProperties.getPublisher().getQos()) == 0 && !respondAsync) {
+      // QoS 0 has no PUBACK to wait for, answer without chaining on the publish future
+      publish.exceptionally(ex -> {
+        log.warn("MqttPublishRequest - QoS 0 publish failed for BrokerId: {}, RequestId: {}: {}",
+            brokerId, publishRequestId, ex.getMessage());
+        return null;
+      });
+      return CompletableFuture.completedFuture(ResponseEntity.accepted()
+          .header(REQUEST_ID_HEADER, publishRequestId).body(
+              PublishResponse.builder().brokerId(brokerId).topic(topic)
+                  .status(PublishStatus.ACCEPTED).build()));
+    }
+
+    CompletableFuture<ResponseEntity<PublishResponse>> result = toResponseEntity(publish,
+        brokerId, topic, publishRequestId);
+    if (!respondAsync) {
+      return result;
+    }
+    // Answer right away, the outcome is recorded for GET /mqtt/publish/{requestId}
+    PublishResponse accepted = PublishResponse.builder().brokerId(brokerId).topic(topic)
+        .status(PublishStatus.ACCEPTED).requestId(publishRequestId).build();
+    publishStatusTracker.accept(publishRequestId, accepted);
+    result.thenAccept(response -> publishStatusTracker.complete(publishRequestId,
+        withRequestId(response.getBody(), publishRequestId)));
+    return CompletableFuture.completedFuture(ResponseEntity.accepted()
+        .header(REQUEST_ID_HEADER, publishRequestId)
+        .header(HttpHeaders.LOCATION, "/mqtt/publish/" + publishRequestId).body(accepted));
+  }
+
+  @GetMapping(path = "/publish/{requestId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Tag(name = "Publish Messages", description = "API to get the status of an asynchronously accepted publish")
+  public ResponseEntity<PublishResponse> getPublishStatus(@PathVariable String requestId) {
+    return publishStatusTracker.find(requestId).map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+
+  @PostMapping(path = "/{brokerId}/send-batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  @Tag(name = "Publish Messages", description = "API to publish a batch of messages to MQTT brokers")
+  public CompletableFuture<ResponseEntity<List<PublishResponse>>> publishBatch(
+      @PathVariable Long brokerId,
+      @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId,
+      @RequestBody(required = false) List<MqttPublishMessageRequest> messages) {
+    int size = messages != null ? messages.size() : 0;
+    int maxBatchSize = mqttProperties.getPublisher().getBatch().getMaxSize();
+    log.debug("MqttPublishBatchRequest - BrokerId: {}, Size: {}, RequestId: {}", brokerId, size,
+        requestId);
+    if (size == 0 || size > maxBatchSize) {
+      log.error("MqttPublishBatchRequest - Invalid batch size: {} for request - {} ", size,
+          requestId);
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Invalid batch: Batch must contain between 1 and " + maxBatchSize + " messages");
+    }
+    final String publishRequestId = requestId == null ? UUID.randomUUID().toString() : requestId;
+
+    // Invalid messages fail individually, the rest of the batch is still published
+    List<CompletableFuture<PublishResponse>> results = new ArrayList<>(messages.size());
+    List<CompletableFuture<PublishStatus>> publishes = hiveMqttPublisherService.publishBatch(brokerId,
+        messages, publishRequestId);
+    for (int i = 0; i < publishes.size(); i++) {
+      String topic = messages.get(i) != null ? messages.get(i).topic() : null;
+      results.add(publishes.get(i).orTimeout(PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .handle((status, ex) -> {
+            if (ex == null) {
+              return PublishResponse.builder().brokerId(brokerId).topic(topic)
+                  .status(published(status)).build();
+            }
+            Throwable cause = (ex.getCause() != null) ? ex.getCause() : ex;
+            return PublishResponse.builder().brokerId(brokerId).topic(topic)
+                .status(PublishStatus.FAILED).failureReason(cause.getMessage()).build();
+          }));
+    }
+    return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).thenApply(
+        __ -> ResponseEntity.ok().header(REQUEST_ID_HEADER, publishRequestId)
+            .body(results.stream().map(CompletableFuture::join).toList()));
+  }
+
+  @PostMapping(path = "/{brokerId}/send-stream", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  @Tag(name = "Publish Messages", description = "API to stream NDJSON messages to MQTT brokers")
+  public ResponseEntity<PublishStreamResponse> publishStream(@PathVariable Long brokerId,
+      @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId,
+      HttpServletRequest request) throws IOException {
+    final String publishRequestId = requestId == null ? UUID.randomUUID().toString() : requestId;
+    log.debug("MqttPublishStreamRequest - BrokerId: {}, RequestId: {}", brokerId,
+        publishRequestId);
+    PublishStreamResponse response = mqttStreamPublisherService.publishStream(brokerId,
+        request.getInputStream(), publishRequestId);
+    return ResponseEntity.ok().header(REQUEST_ID_HEADER, publishRequestId).body(response);
+  }
+
+  private CompletableFuture<ResponseEntity<PublishResponse>> toResponseEntity(
+      CompletableFuture<PublishStatus> publish, Long brokerId, String topic, String publishRequestId) {
+    // A publish stored in the outbox has not reached the broker yet and answers 202
+    return publish.orTimeout(PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS).thenApply(
+        status -> ResponseEntity.status(published(status) == PublishStatus.ACCEPTED
+                ? HttpStatus.ACCEPTED : HttpStatus.OK).header(REQUEST_ID_HEADER, publishRequestId)
+            .body(PublishResponse.builder().brokerId(brokerId).topic(topic)
+                .status(published(status)).build())).exceptionally(ex -> {
+      Throwable cause = (ex.getCause() != null) ? ex.getCause() : ex;
+
+      if (cause instanceof MqttPublishInputException e) {
+        log.error(
+            "MqttPublishRequest - Input validation failed for BrokerId: {}, Topic: {}, RequestId: {}, Reason: {}",
+            brokerId, topic, publishRequestId, e.getMessage());
+        return ResponseEntity.badRequest().header(REQUEST_ID_HEADER, publishRequestId).body(
+            PublishResponse.builder().brokerId(brokerId).topic(topic)
+                .status(PublishStatus.FAILED).failureReason(ex.getLocalizedMessage()).build());
+      }
+      if (cause instanceof MqttPublishRejectedException e) {
+        log.warn("MqttPublishRequest - Rejected for BrokerId: {}, Topic: {}, RequestId: {}: {}",
+            brokerId, topic, publishRequestId, e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(REQUEST_ID_HEADER, publishRequestId)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds())).body(
                 PublishResponse.builder().brokerId(brokerId).topic(topic)
-                    .status(PublishStatus.FAILED).failureReason(ex.getLocalizedMessage()).build());
-          }
-          return ResponseEntity.internalServerError().header(REQUEST_ID_HEADER, publishRequestId)
-              .body(PublishResponse.builder().brokerId(brokerId).topic(topic)
-                  .status(PublishStatus.FAILED).failureReason(ex.getMessage()).build());
-        });
+                    .status(PublishStatus.FAILED).failureReason(e.getMessage()).build());
+      }
+      return ResponseEntity.internalServerError().header(REQUEST_ID_HEADER, publishRequestId)
+          .body(PublishResponse.builder().brokerId(brokerId).topic(topic)
+              .status(PublishStatus.FAILED).failureReason(ex.getMessage()).build());
+    });
+  }
+
+  /**
+   * Tokenizes the body without building a tree, accepting exactly one JSON root value.
+   */
+  private boolean isWellFormedJson(byte[] body) {
+    try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+      if (parser.nextToken() == null) {
+        return false;
+      }
+      parser.skipChildren();
+      return parser.nextToken() == null;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static PublishStatus published(PublishStatus status) {
+    return status == PublishStatus.ACCEPTED ? PublishStatus.ACCEPTED : PublishStatus.PUBLISHED;
+  }
+
+  private static PublishResponse withRequestId(PublishResponse response, String requestId) {
+    return PublishResponse.builder().brokerId(response.brokerId()).topic(response.topic())
+        .status(response.status()).failureReason(response.failureReason()).requestId(requestId)
+        .build();
   }
 
   private void validateTopic(String topic, String requestId) {
@@ -0,0 +1,156 @@
+package com.hivemq.httpmqttbridge.publish.outbox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ordered chain of {@link OutboxSegment}s for one broker. Records are appended to the newest
+ * segment and consumed from the oldest. Fully consumed segments are reset and kept for reuse
+ * instead of being unmapped, so the number of mapped files never exceeds {@code maxSegments}.
+ */
+@Slf4j
+final class BrokerOutbox {
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private final Path directory;
+  private final int segmentSizeBytes;
+  private final int maxSegments;
+  private final Deque<OutboxSegment> segments = new ArrayDeque<>();
+  private final Deque<OutboxSegment> recycled = new ArrayDeque<>();
+  private int mappedSegments;
+  private long nextSequence;
+  private volatile int pending;
+
+  private BrokerOutbox(Path directory, int segmentSizeBytes, int maxSegments) {
+    this.directory = directory;
+    this.segmentSizeBytes = segmentSizeBytes;
+    this.maxSegments = maxSegments;
+  }
+
+  /**
+   * Maps the existing segments of {@code directory}, creating it if needed, and restores the
+   * unconsumed records in sequence order.
+   */
+  static BrokerOutbox open(Path directory, int segmentSizeBytes, int maxSegments)
+      throws IOException {
+    Files.createDirectories(directory);
+    BrokerOutbox outbox = new BrokerOutbox(directory, segmentSizeBytes, maxSegments);
+    List<OutboxSegment> existing = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.filter(f -> f.toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+        existing.add(OutboxSegment.open(file, segmentSizeBytes));
+      }
+    }
+    existing.sort(Comparator.comparingLong(OutboxSegment::sequence));
+    for (OutboxSegment segment : existing) {
+      outbox.mappedSegments++;
+      outbox.nextSequence = Math.max(outbox.nextSequence, segment.sequence() + 1);
+      if (segment.isEmpty()) {
+        outbox.recycled.add(segment);
+      } else {
+        outbox.segments.add(segment);
+        outbox.pending += segment.countRecords();
+      }
+    }
+    return outbox;
+  }
+
+  /**
+   * Appends a record, rolling over to a new segment when the current one is full.
+   *
+   * @return false if the record does not fit because all segments are in use
+   */
+  synchronized boolean append(byte[] record) throws IOException {
+    OutboxSegment tail = segments.peekLast();
+    if (tail == null || !tail.append(record)) {
+      OutboxSegment next = nextSegment();
+      if (next == null || !next.append(record)) {
+        if (next != null && next.isEmpty()) {
+          recycle(next);
+        }
+        return false;
+      }
+    }
+    pending++;
+    return true;
+  }
+
+  /**
+   * Writes the newest segment, which holds the last appended record, through to the disk.
+   */
+  synchronized void force() {
+    OutboxSegment tail = segments.peekLast();
+    if (tail != null) {
+      tail.force();
+    }
+  }
+
+  /**
+   * Returns up to {@code max} of the oldest records without consuming them.
+   */
+  synchronized List<byte[]> peek(int max) {
+    List<byte[]> records = new ArrayList<>(Math.min(max, pending));
+    for (OutboxSegment segment : segments) {
+      if (records.size() >= max) {
+        break;
+      }
+      segment.peek(max, records);
+    }
+    return records;
+  }
+
+  /**
+   * Consumes the {@code count} oldest records after the broker acknowledged them.
+   */
+  synchronized void acknowledge(int count) {
+    int remaining = count;
+    while (remaining > 0 && !segments.isEmpty()) {
+      OutboxSegment head = segments.peekFirst();
+      int consumed = head.consume(remaining);
+      remaining -= consumed;
+      pending -= consumed;
+      if (head.isEmpty()) {
+        recycle(segments.pollFirst());
+      }
+    }
+  }
+
+  boolean hasPending() {
+    return pending > 0;
+  }
+
+  int pending() {
+    return pending;
+  }
+
+  private OutboxSegment nextSegment() throws IOException {
+    OutboxSegment segment = recycled.pollFirst();
+    if (segment == null) {
+      if (mappedSegments >= maxSegments) {
+        return null;
+      }
+      segment = OutboxSegment.open(directory.resolve("segment-" + mappedSegments
+          + SEGMENT_SUFFIX), segmentSizeBytes);
+      mappedSegments++;
+      log.debug("Mapped outbox segment {}", segment.path());
+    }
+    segment.reset(nextSequence++);
+    segments.addLast(segment);
+    return segment;
+  }
+
+  private void recycle(OutboxSegment segment) {
+    segments.remove(segment);
+    segment.reset(segment.sequence());
+    recycled.addLast(segment);
+  }
+}
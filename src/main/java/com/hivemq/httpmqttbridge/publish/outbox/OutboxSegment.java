@@ -0,0 +1,138 @@
+package com.hivemq.httpmqttbridge.publish.outbox;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Fixed size, memory-mapped, append-only record file. The header keeps the segment sequence and
+ * the write and read positions so a restart resumes where replay stopped. Records are stored as
+ * a length prefix followed by the record bytes.
+ *
+ * <p>Writes go to the page cache and reach the disk whenever the operating system flushes it, so
+ * they survive a crash of the process but not of the machine unless {@link #force()} is called.
+ */
+final class OutboxSegment {
+
+  static final int HEADER_SIZE = 32;
+  private static final int MAGIC = 0x4D514F42;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int SEQUENCE_OFFSET = 4;
+  private static final int WRITE_POSITION_OFFSET = 12;
+  private static final int READ_POSITION_OFFSET = 16;
+
+  private final Path path;
+  private final MappedByteBuffer buffer;
+  private long sequence;
+  private int writePosition;
+  private int readPosition;
+
+  private OutboxSegment(Path path, MappedByteBuffer buffer) {
+    this.path = path;
+    this.buffer = buffer;
+    if (buffer.getInt(MAGIC_OFFSET) == MAGIC) {
+      sequence = buffer.getLong(SEQUENCE_OFFSET);
+      writePosition = buffer.getInt(WRITE_POSITION_OFFSET);
+      readPosition = buffer.getInt(READ_POSITION_OFFSET);
+    } else {
+      reset(0);
+    }
+  }
+
+  static OutboxSegment open(Path path, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed
+      return new OutboxSegment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+  }
+
+  /**
+   * Empties the segment so it can be reused as the newest segment of the outbox.
+   */
+  void reset(long newSequence) {
+    sequence = newSequence;
+    writePosition = HEADER_SIZE;
+    readPosition = HEADER_SIZE;
+    buffer.putInt(MAGIC_OFFSET, MAGIC);
+    buffer.putLong(SEQUENCE_OFFSET, sequence);
+    writePositions();
+  }
+
+  boolean append(byte[] record) {
+    if (writePosition + Integer.BYTES + record.length > buffer.capacity()) {
+      return false;
+    }
+    buffer.putInt(writePosition, record.length);
+    buffer.put(writePosition + Integer.BYTES, record);
+    writePosition += Integer.BYTES + record.length;
+    writePositions();
+    return true;
+  }
+
+  /**
+   * Writes the header and the records appended so far through to the disk.
+   */
+  void force() {
+    buffer.force(0, writePosition);
+  }
+
+  /**
+   * Adds up to {@code max} unconsumed records to {@code records} without consuming them.
+   */
+  void peek(int max, List<byte[]> records) {
+    int position = readPosition;
+    while (records.size() < max && position < writePosition) {
+      byte[] record = new byte[buffer.getInt(position)];
+      buffer.get(position + Integer.BYTES, record);
+      records.add(record);
+      position += Integer.BYTES + record.length;
+    }
+  }
+
+  /**
+   * Consumes up to {@code count} records and returns how many were consumed.
+   */
+  int consume(int count) {
+    int consumed = 0;
+    while (consumed < count && readPosition < writePosition) {
+      readPosition += Integer.BYTES + buffer.getInt(readPosition);
+      consumed++;
+    }
+    writePositions();
+    return consumed;
+  }
+
+  int countRecords() {
+    int count = 0;
+    for (int position = readPosition; position < writePosition;
+        position += Integer.BYTES + buffer.getInt(position)) {
+      count++;
+    }
+    return count;
+  }
+
+  boolean isEmpty() {
+    return readPosition >= writePosition;
+  }
+
+  long sequence() {
+    return sequence;
+  }
+
+  Path path() {
+    return path;
+  }
+
+  int capacity() {
+    return buffer.capacity() - HEADER_SIZE - Integer.BYTES;
+  }
+
+  private void writePositions() {
+    buffer.putInt(WRITE_POSITION_OFFSET, writePosition);
+    buffer.putInt(READ_POSITION_OFFSET, readPosition);
+  }
+}
@@ -0,0 +1,285 @@
+package com.hivemq.httpmqttbridge.publish.outbox;
+
+import static com.hivemq.httpmqttbridge.common.codec.PayloadCodec.CONTENT_ENCODING_PROPERTY;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.exceptions.ConnectionClosedException;
+import com.hivemq.client.mqtt.exceptions.ConnectionFailedException;
+import com.hivemq.client.mqtt.exceptions.MqttClientStateException;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.exception.MqttPublishException;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Store-and-forward outbox for publishes that cannot reach their broker. Each broker gets an
+ * append-only log of memory-mapped segments under {@code mqtt.publisher.outbox.directory}, so
+ * buffered messages live in the page cache instead of the heap and survive a restart. Once a
+ * broker is reachable again its records are replayed one at a time in order, at most
+ * {@code replay-batch-size} every {@code replay-interval-ms}, and each is consumed only after the
+ * broker acknowledged it. Replay pauses while the broker is unreachable; a record the broker
+ * rejects is logged and dropped so it cannot hold back the records behind it.
+ *
+ * <p>Delivery from the outbox is at least once: a record whose acknowledgement does not arrive
+ * within {@code replay-timeout-ms} is sent again on the next run. Live publishes that time out
+ * are failed rather than stored, since they may have reached the broker already.
+ */
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PublishOutbox {
+
+  private final MqttBrokerClientProvider<Mqtt5AsyncClient> mqttBrokerClientProvider;
+
+  private final MqttProperties mqttProperties;
+
+  private final ConcurrentMap<Long, BrokerOutbox> outboxes = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService replayScheduler;
+
+  @PostConstruct
+  void start() throws IOException {
+    MqttProperties.Outbox settings = settings();
+    if (!settings.isEnabled()) {
+      return;
+    }
+    Path root = Path.of(settings.getDirectory());
+    if (Files.isDirectory(root)) {
+      try (Stream<Path> brokers = Files.list(root)) {
+        for (Path brokerDirectory : brokers.filter(Files::isDirectory).toList()) {
+          Long brokerId = brokerId(brokerDirectory);
+          if (brokerId == null) {
+            log.warn("Ignoring outbox directory {}, not named after a broker id", brokerDirectory);
+            continue;
+          }
+          BrokerOutbox outbox = BrokerOutbox.open(brokerDirectory, settings.getSegmentSizeBytes(),
+              settings.getMaxSegmentsPerBroker());
+          outboxes.put(brokerId, outbox);
+          if (outbox.hasPending()) {
+            log.info("Restored {} outbox records for broker {}", outbox.pending(), brokerId);
+          }
+        }
+      }
+    }
+    replayScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mqtt-outbox-replay");
+      thread.setDaemon(true);
+      return thread;
+    });
+    replayScheduler.scheduleWithFixedDelay(this::replay, settings.getReplayIntervalMs(),
+        settings.getReplayIntervalMs(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    if (replayScheduler != null) {
+      replayScheduler.shutdownNow();
+    }
+  }
+
+  public boolean isEnabled() {
+    return settings().isEnabled();
+  }
+
+  /**
+   * Whether older publishes for the broker are still waiting in the outbox. New publishes must
+   * then be appended as well so they are not delivered ahead of them.
+   */
+  public boolean hasPending(Long brokerId) {
+    BrokerOutbox outbox = outboxes.get(brokerId);
+    return outbox != null && outbox.hasPending();
+  }
+
+  /**
+   * Stores the publish for later delivery. The returned future completes with {@code null} once
+   * the record is in the outbox, or fails if the outbox of the broker is full. The record is on
+   * disk by then only with {@code sync-on-append}; otherwise it is in the page cache and is lost
+   * if the machine goes down before the operating system writes it out.
+   */
+  public CompletableFuture<Mqtt5PublishResult> append(Long brokerId, Mqtt5Publish publish) {
+    try {
+      BrokerOutbox outbox = outbox(brokerId);
+      if (!outbox.append(encode(publish))) {
+        return CompletableFuture.failedFuture(
+            new MqttPublishException("Outbox for broker ID " + brokerId + " is full"));
+      }
+      if (settings().isSyncOnAppend()) {
+        outbox.force();
+      }
+    } catch (IOException e) {
+      log.error("Failed to append to outbox of broker {}", brokerId, e);
+      return CompletableFuture.failedFuture(
+          new MqttPublishException("Failed to write outbox for broker ID " + brokerId, e));
+    }
+    log.debug("Stored publish for broker {} on topic {} in outbox", brokerId, publish.getTopic());
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Whether a publish failed because the broker could not be reached, as opposed to being
+   * rejected or invalid. A publish that timed out waiting for its acknowledgement is not one: it
+   * may have reached the broker, and storing it would deliver it twice.
+   */
+  public static boolean isConnectivityFailure(Throwable ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ConnectionFailedException || cause instanceof ConnectionClosedException
+          || cause instanceof MqttClientStateException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTimeout(Throwable ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof TimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void replay() {
+    outboxes.forEach((brokerId, outbox) -> {
+      if (outbox.hasPending()) {
+        try {
+          replay(brokerId, outbox);
+        } catch (RuntimeException e) {
+          log.warn("Outbox replay for broker {} failed: {}", brokerId, e.getMessage());
+        }
+      }
+    });
+  }
+
+  /**
+   * Sends the oldest records one at a time, each only after the previous one was acknowledged,
+   * and stops at the first record that cannot be delivered so it is retried first on the next
+   * run.
+   */
+  private void replay(Long brokerId, BrokerOutbox outbox) {
+    int consumed = 0;
+    int rejected = 0;
+    for (byte[] record : outbox.peek(settings().getReplayBatchSize())) {
+      Mqtt5Publish publish = decode(record);
+      CompletableFuture<Mqtt5AsyncClient> client = mqttBrokerClientProvider.getClient(brokerId,
+          publish.getTopic().toString());
+      Throwable failure;
+      try {
+        Mqtt5PublishResult result = client.thenCompose(connected -> connected.publish(publish))
+            .get(settings().getReplayTimeoutMs(), TimeUnit.MILLISECONDS);
+        failure = result != null ? result.getError().orElse(null) : null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (Exception e) {
+        failure = e;
+      }
+      if (failure != null) {
+        if (!client.isDone() || client.isCompletedExceptionally()
+            || isConnectivityFailure(failure) || isTimeout(failure)) {
+          // A timed out record may have reached the broker; it is sent again all the same
+          log.debug("Outbox replay for broker {} paused: {}", brokerId, failure.getMessage());
+          break;
+        }
+        log.warn("Dropping outbox record for broker {} on topic {}, rejected by the broker: {}",
+            brokerId, publish.getTopic(), failure.getMessage());
+        rejected++;
+      }
+      outbox.acknowledge(1);
+      consumed++;
+    }
+    if (consumed > 0) {
+      log.info("Replayed {} outbox records to broker {} ({} rejected), {} pending", consumed,
+          brokerId, rejected, outbox.pending());
+    }
+  }
+
+  private BrokerOutbox outbox(Long brokerId) throws IOException {
+    BrokerOutbox outbox = outboxes.get(brokerId);
+    if (outbox != null) {
+      return outbox;
+    }
+    synchronized (outboxes) {
+      outbox = outboxes.get(brokerId);
+      if (outbox == null) {
+        MqttProperties.Outbox settings = settings();
+        outbox = BrokerOutbox.open(Path.of(settings.getDirectory(), brokerId.toString()),
+            settings.getSegmentSizeBytes(), settings.getMaxSegmentsPerBroker());
+        outboxes.put(brokerId, outbox);
+      }
+      return outbox;
+    }
+  }
+
+  private static Long brokerId(Path brokerDirectory) {
+    try {
+      return Long.valueOf(brokerDirectory.getFileName().toString());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Record layout: qos, retain, topic length, topic, content-encoding length, content-encoding,
+   * payload.
+   */
+  static byte[] encode(Mqtt5Publish publish) {
+    byte[] topic = publish.getTopic().toString().getBytes(StandardCharsets.UTF_8);
+    byte[] encoding = publish.getUserProperties().asList().stream()
+        .filter(p -> p.getName().toString().equals(CONTENT_ENCODING_PROPERTY)).findFirst()
+        .map(p -> p.getValue().toString().getBytes(StandardCharsets.UTF_8)).orElse(new byte[0]);
+    byte[] payload = publish.getPayloadAsBytes();
+    ByteBuffer record = ByteBuffer.allocate(
+        2 + Short.BYTES + topic.length + Short.BYTES + encoding.length + payload.length);
+    record.put((byte) publish.getQos().getCode()).put((byte) (publish.isRetain() ? 1 : 0));
+    record.putShort((short) topic.length).put(topic);
+    record.putShort((short) encoding.length).put(encoding);
+    record.put(payload);
+    return record.array();
+  }
+
+  static Mqtt5Publish decode(byte[] bytes) {
+    ByteBuffer record = ByteBuffer.wrap(bytes);
+    MqttQos qos = MqttQos.fromCode(record.get());
+    boolean retain = record.get() == 1;
+    byte[] topic = new byte[Short.toUnsignedInt(record.getShort())];
+    record.get(topic);
+    byte[] encoding = new byte[Short.toUnsignedInt(record.getShort())];
+    record.get(encoding);
+    Mqtt5PublishBuilder.Complete builder = Mqtt5Publish.builder()
+        .topic(new String(topic, StandardCharsets.UTF_8)).qos(qos).retain(retain);
+    if (encoding.length > 0) {
+      builder = builder.userProperties()
+          .add(CONTENT_ENCODING_PROPERTY, new String(encoding, StandardCharsets.UTF_8))
+          .applyUserProperties();
+    }
+    return builder.payload(record.slice()).build();
+  }
+
+  private MqttProperties.Outbox settings() {
+    return mqttProperties.getPublisher().getOutbox();
+  }
+}
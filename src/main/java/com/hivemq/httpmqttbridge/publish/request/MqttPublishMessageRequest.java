@@ -0,0 +1,13 @@
+package com.hivemq.httpmqttbridge.publish.request;
+
+import lombok.Builder;
+
+/**
+ * Single message of a batch publish request. {@code qos} and {@code retain} are optional and fall
+ * back to the publisher defaults when absent.
+ */
+@Builder
+public record MqttPublishMessageRequest(String topic, Object payload, Integer qos,
+                                        Boolean retain) {
+
+}
@@ -6,6 +6,6 @@ import lombok.Builder;
 @Builder
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public record PublishResponse(Long brokerId, String topic, PublishStatus status,
-                              String failureReason) {
+                              String failureReason, String requestId) {
 
 }
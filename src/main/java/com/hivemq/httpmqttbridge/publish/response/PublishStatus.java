@@ -3,6 +3,7 @@ package com.hivemq.httpmqttbridge.publish.response;
 import com.fasterxml.jackson.annotation.JsonValue;
 
 public enum PublishStatus {
+  ACCEPTED,
   FAILED,
   PUBLISHED;
 
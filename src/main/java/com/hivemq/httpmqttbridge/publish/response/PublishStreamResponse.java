@@ -0,0 +1,13 @@
+package com.hivemq.httpmqttbridge.publish.response;
+
+import lombok.Builder;
+
+/**
+ * Outcome of an NDJSON upload. {@code pending} publishes had neither been acknowledged nor failed
+ * when the response was sent.
+ */
+@Builder
+public record PublishStreamResponse(Long brokerId, long received, long published, long failed,
+    long pending) {
+
+}
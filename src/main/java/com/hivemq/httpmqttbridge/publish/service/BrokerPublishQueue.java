@@ -0,0 +1,130 @@
+package com.hivemq.httpmqttbridge.publish.service;
+
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
+import com.hivemq.httpmqttbridge.exception.MqttPublishRejectedException;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded publish queue of one broker. A dedicated sender thread drains it in micro-batches and
+ * keeps at most {@code maxInflight} publishes unacknowledged, so a slow broker fills the queue
+ * and new publishes are rejected instead of piling up as inflight futures. A publish the broker
+ * has not acknowledged within {@code sendTimeoutMs} fails and frees its inflight slot. Once shut
+ * down the queue rejects new publishes, and the publishes still queued are rejected when the
+ * sender thread exits.
+ */
+@Slf4j
+class BrokerPublishQueue {
+
+  private final Long brokerId;
+  private final MqttBrokerClientProvider<Mqtt5AsyncClient> clientProvider;
+  private final BlockingQueue<PendingPublish> queue;
+  private final Semaphore inflight;
+  private final int batchSize;
+  private final long retryAfterSeconds;
+  private final long sendTimeoutMs;
+  private final Thread sender;
+  private boolean closed;
+
+  BrokerPublishQueue(Long brokerId, MqttBrokerClientProvider<Mqtt5AsyncClient> clientProvider,
+      int capacity, int batchSize, int maxInflight, long retryAfterSeconds, long sendTimeoutMs) {
+    this.brokerId = brokerId;
+    this.clientProvider = clientProvider;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.inflight = new Semaphore(maxInflight);
+    this.batchSize = Math.max(1, Math.min(batchSize, maxInflight));
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.sendTimeoutMs = sendTimeoutMs;
+    this.sender = new Thread(this::drain, "mqtt-publish-sender-" + brokerId);
+    this.sender.setDaemon(true);
+    this.sender.start();
+  }
+
+  CompletableFuture<Mqtt5PublishResult> submit(Mqtt5Publish publish) {
+    PendingPublish pending = new PendingPublish(publish, new CompletableFuture<>());
+    synchronized (this) {
+      // Checked under the lock so nothing is queued after shutdown() rejected the leftovers
+      if (closed) {
+        return CompletableFuture.failedFuture(shutDown());
+      }
+      if (queue.offer(pending)) {
+        return pending.result();
+      }
+    }
+    return CompletableFuture.failedFuture(new MqttPublishRejectedException(
+        "Publish queue for broker " + brokerId + " is full", retryAfterSeconds));
+  }
+
+  int size() {
+    return queue.size();
+  }
+
+  void shutdown() {
+    synchronized (this) {
+      closed = true;
+    }
+    sender.interrupt();
+    rejectQueued();
+  }
+
+  private void rejectQueued() {
+    PendingPublish pending;
+    while ((pending = queue.poll()) != null) {
+      pending.result().completeExceptionally(shutDown());
+    }
+  }
+
+  private MqttPublishRejectedException shutDown() {
+    return new MqttPublishRejectedException(
+        "Publish queue for broker " + brokerId + " is shut down", retryAfterSeconds);
+  }
+
+  private void drain() {
+    List<PendingPublish> batch = new ArrayList<>(batchSize);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        batch.add(queue.take());
+        queue.drainTo(batch, batchSize - 1);
+        // Blocks while the broker has not acked enough earlier publishes
+        inflight.acquire(batch.size());
+        for (PendingPublish pending : batch) {
+          send(pending);
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      batch.forEach(pending -> pending.result().completeExceptionally(shutDown()));
+    }
+    rejectQueued();
+    log.debug("Publish sender for broker {} stopped", brokerId);
+  }
+
+  private void send(PendingPublish pending) {
+    clientProvider.getClient(brokerId, pending.publish().getTopic().toString())
+        .thenCompose(client -> client.publish(pending.publish()))
+        .orTimeout(sendTimeoutMs, TimeUnit.MILLISECONDS)
+        .whenComplete((result, ex) -> {
+          inflight.release();
+          if (ex != null) {
+            pending.result().completeExceptionally(ex);
+          } else {
+            pending.result().complete(result);
+          }
+        });
+  }
+
+  private record PendingPublish(Mqtt5Publish publish,
+                                CompletableFuture<Mqtt5PublishResult> result) {
+
+  }
+}
@@ -1,18 +1,35 @@
 package com.hivemq.httpmqttbridge.publish.service;
 
+import static com.hivemq.httpmqttbridge.common.codec.PayloadCodec.CONTENT_ENCODING_PROPERTY;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCodec;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor.Encoding;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
 import com.hivemq.httpmqttbridge.exception.MqttBrokerNotFoundException;
 import com.hivemq.httpmqttbridge.exception.MqttPublishException;
 import com.hivemq.httpmqttbridge.exception.MqttPublishInputException;
+import com.hivemq.httpmqttbridge.exception.MqttPublishRejectedException;
 import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.publish.outbox.PublishOutbox;
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
+import com.hivemq.httpmqttbridge.publish.response.PublishStatus;
+import jakarta.annotation.PreDestroy;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 /**
@@ -28,33 +45,137 @@ public class HiveMqttPublisherService implements MqttPublisherService {
 
   private final ObjectMapper objectMapper;
 
-  @Value("${mqtt.publisher.qos}")
-  private int qos;
+  private final PayloadCompressor payloadCompressor;
+
+  private final PublishOutbox publishOutbox;
+
+  private final MqttProperties mqttProperties;
 
-  @Value("${mqtt.publisher.retain}")
-  private boolean retain;
+  private final ConcurrentMap<Long, BrokerPublishQueue> queues = new ConcurrentHashMap<>();
 
   @Override
-  public CompletableFuture<Void> publish(Long brokerId, String topic, Object payload,
+  public CompletableFuture<PublishStatus> publish(Long brokerId, String topic, Object payload,
       String requestId) {
 
     //validateBroker(brokerId, requestId);
-    byte[] payloadBytes = getPayloadBytes(payload, requestId);
-
-    return mqttBrokerClientProvider.getClient(brokerId).thenCompose(client -> client.publish(
-        Mqtt5Publish.builder().topic(topic).qos(getQos(qos)).retain(retain)
-            .payload(ByteBuffer.wrap(payloadBytes)).build())).thenAccept(publishResult -> {
-      log.debug("Successfully published requestId - {} to broker {} on topic {}", requestId,
-          brokerId, topic);
-    }).exceptionally(ex -> {
-      log.error("Failed to publish to broker {} on topic {}: {}", brokerId, topic, ex.getMessage(),
-          ex);
-      if (ex.getCause() != null && ex.getCause() instanceof MqttBrokerNotFoundException) {
-        throw new MqttPublishInputException(ex.getMessage());
-      }
-
-      throw new MqttPublishException(ex.getMessage());
-    });
+    return publish(brokerId, MqttPublishMessageRequest.builder().topic(topic).payload(payload)
+        .build(), requestId);
+  }
+
+  @Override
+  public CompletableFuture<PublishStatus> publish(Long brokerId, MqttPublishMessageRequest message,
+      String requestId) {
+    if (message == null) {
+      return CompletableFuture.failedFuture(
+          new MqttPublishInputException("Invalid message: Message cannot be null"));
+    }
+    if (message.topic() == null || message.topic().isBlank()) {
+      return CompletableFuture.failedFuture(
+          new MqttPublishInputException("Invalid topic: Topic cannot be null or empty"));
+    }
+    Mqtt5Publish publish;
+    try {
+      publish = buildPublish(brokerId, message.topic(),
+          getPayloadBytes(message.payload(), requestId),
+          message.qos() != null ? message.qos() : mqttProperties.getPublisher().getQos(),
+          message.retain() != null ? message.retain() : mqttProperties.getPublisher().isRetain());
+    } catch (MqttPublishInputException | IllegalArgumentException e) {
+      // The client rejects malformed topics, e.g. with wildcards, with IllegalArgumentException
+      log.error("MqttPublishRequest - Invalid message for topic {} in request - {}: {}",
+          message.topic(), requestId, e.getMessage());
+      return CompletableFuture.failedFuture(e instanceof MqttPublishInputException input ? input
+          : new MqttPublishInputException(e.getMessage(), e));
+    } catch (MqttPublishException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return send(brokerId, publish).thenApply(status -> {
+      log.debug("Successfully {} requestId - {} to broker {} on topic {}", status, requestId,
+          brokerId, message.topic());
+      return status;
+    }).exceptionally(ex -> handlePublishFailure(brokerId, message.topic(), ex));
+  }
+
+  @Override
+  public List<CompletableFuture<PublishStatus>> publishBatch(Long brokerId,
+      List<MqttPublishMessageRequest> messages, String requestId) {
+    // Pipeline every message onto its pooled client without waiting for earlier acks
+    return messages.stream().map(message -> publish(brokerId, message, requestId)).toList();
+  }
+
+  @PreDestroy
+  void shutdownQueues() {
+    queues.values().forEach(BrokerPublishQueue::shutdown);
+  }
+
+  /**
+   * Stops the publish queue and sender thread of an evicted broker; the next publish starts a new
+   * one.
+   */
+  @EventListener
+  void onBrokerEvicted(MqttBrokerEvictedEvent event) {
+    BrokerPublishQueue queue = queues.remove(event.brokerId());
+    if (queue != null) {
+      queue.shutdown();
+    }
+  }
+
+  private CompletableFuture<PublishStatus> send(Long brokerId, Mqtt5Publish publish) {
+    if (!publishOutbox.isEnabled()) {
+      return dispatch(brokerId, publish).thenApply(result -> PublishStatus.PUBLISHED);
+    }
+    if (publishOutbox.hasPending(brokerId)) {
+      // Queue behind the records still waiting for replay to keep the publish order
+      return outbox(brokerId, publish);
+    }
+    return dispatch(brokerId, publish).thenApply(result -> PublishStatus.PUBLISHED)
+        .exceptionallyCompose(ex -> PublishOutbox.isConnectivityFailure(ex)
+            ? outbox(brokerId, publish) : CompletableFuture.failedFuture(ex));
+  }
+
+  private CompletableFuture<PublishStatus> outbox(Long brokerId, Mqtt5Publish publish) {
+    return publishOutbox.append(brokerId, publish).thenApply(stored -> PublishStatus.ACCEPTED);
+  }
+
+  private CompletableFuture<Mqtt5PublishResult> dispatch(Long brokerId, Mqtt5Publish publish) {
+    MqttProperties.Queue queue = mqttProperties.getPublisher().getQueue();
+    if (!queue.isEnabled()) {
+      return mqttBrokerClientProvider.getClient(brokerId, publish.getTopic().toString())
+          .thenCompose(client -> client.publish(publish));
+    }
+    return queues.computeIfAbsent(brokerId,
+        id -> new BrokerPublishQueue(id, mqttBrokerClientProvider, queue.getCapacity(),
+            queue.getBatchSize(), queue.getMaxInflight(), queue.getRetryAfterSeconds(),
+            queue.getSendTimeoutMs())).submit(publish);
+  }
+
+  private Mqtt5Publish buildPublish(Long brokerId, String topic, byte[] payloadBytes, int qos,
+      boolean retain) {
+    Mqtt5PublishBuilder.Complete builder = Mqtt5Publish.builder().topic(topic).qos(getQos(qos))
+        .retain(retain);
+    Encoding encoding = payloadCompressor.encodingFor(brokerId, topic, payloadBytes.length);
+    if (encoding.codec() != PayloadCodec.NONE) {
+      builder = builder.userProperties()
+          .add(CONTENT_ENCODING_PROPERTY, encoding.codec().encodingName())
+          .applyUserProperties();
+      payloadBytes = encoding.encode(payloadBytes);
+    }
+    return builder.payload(ByteBuffer.wrap(payloadBytes)).build();
+  }
+
+  private PublishStatus handlePublishFailure(Long brokerId, String topic, Throwable ex) {
+    if (ex.getCause() instanceof MqttPublishRejectedException rejected) {
+      // Backpressure under load, not an error worth a stack trace per publish
+      log.warn("Rejected publish to broker {} on topic {}: {}", brokerId, topic,
+          rejected.getMessage());
+      throw rejected;
+    }
+    log.error("Failed to publish to broker {} on topic {}: {}", brokerId, topic, ex.getMessage(),
+        ex);
+    if (ex.getCause() != null && ex.getCause() instanceof MqttBrokerNotFoundException) {
+      throw new MqttPublishInputException(ex.getMessage());
+    }
+
+    throw new MqttPublishException(ex.getMessage());
   }
 
 /*  private  CompletableFuture<Void> validateBroker(Long brokerId, String requestId) {
@@ -66,6 +187,10 @@ public class HiveMqttPublisherService implements MqttPublisherService {
   }*/
 
   private byte[] getPayloadBytes(Object payload, String requestId) {
+    if (payload instanceof byte[] rawPayload) {
+      // Raw request bodies are passed through without re-encoding
+      return rawPayload;
+    }
     byte[] payloadBytes;
     try {
       payloadBytes = objectMapper.writeValueAsBytes(payload);
@@ -79,6 +204,9 @@ public class HiveMqttPublisherService implements MqttPublisherService {
 
   private MqttQos getQos(int qos) {
     MqttQos q = MqttQos.fromCode(qos);
-    return q != null ? q : MqttQos.AT_LEAST_ONCE;
+    if (q == null) {
+      throw new MqttPublishInputException("Invalid qos: must be 0, 1 or 2");
+    }
+    return q;
   }
 }
@@ -1,8 +1,22 @@
 package com.hivemq.httpmqttbridge.publish.service;
 
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
+import com.hivemq.httpmqttbridge.publish.response.PublishStatus;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * Publishes messages to a broker. The returned futures complete with
+ * {@link PublishStatus#PUBLISHED} once the broker took the message, or with
+ * {@link PublishStatus#ACCEPTED} when it was stored in the outbox and is delivered later.
+ */
 public interface MqttPublisherService {
 
-  CompletableFuture<Void> publish(Long brokerId, String topic, Object payload, String requestId);
+  CompletableFuture<PublishStatus> publish(Long brokerId, String topic, Object payload, String requestId);
+
+  CompletableFuture<PublishStatus> publish(Long brokerId, MqttPublishMessageRequest message,
+      String requestId);
+
+  List<CompletableFuture<PublishStatus>> publishBatch(Long brokerId,
+      List<MqttPublishMessageRequest> messages, String requestId);
 }
@@ -0,0 +1,182 @@
+package com.hivemq.httpmqttbridge.publish.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.exception.MqttPublishInputException;
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
+import com.hivemq.httpmqttbridge.publish.response.PublishStreamResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes an NDJSON stream line by line while it is being uploaded. Reading from the input
+ * stream blocks whenever the number of unacknowledged publishes reaches the configured limit, so
+ * memory use does not depend on the upload size. A publish not acknowledged within
+ * {@code publish-timeout-ms} counts as failed and frees its slot; publishes still unresolved when
+ * the drain timeout ends the request are reported as pending.
+ */
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MqttStreamPublisherService {
+
+  private static final int READ_BUFFER_SIZE = 8192;
+
+  private final MqttPublisherService mqttPublisherService;
+
+  private final ObjectMapper objectMapper;
+
+  private final MqttProperties mqttProperties;
+
+  public PublishStreamResponse publishStream(Long brokerId, InputStream body, String requestId)
+      throws IOException {
+    Semaphore inflight = new Semaphore(settings().getMaxInflight());
+    AtomicLong published = new AtomicLong();
+    AtomicLong failed = new AtomicLong();
+    long received = 0;
+
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+    boolean oversized = false;
+    int read;
+    while ((read = body.read(buffer)) != -1) {
+      int lineStart = 0;
+      for (int i = 0; i < read; i++) {
+        if (buffer[i] != '\n') {
+          continue;
+        }
+        if (!oversized) {
+          line.write(buffer, lineStart, i - lineStart);
+        }
+        received += publishLine(brokerId, line.toByteArray(), oversized, requestId, inflight,
+            published, failed);
+        line.reset();
+        oversized = false;
+        lineStart = i + 1;
+      }
+      if (!oversized) {
+        line.write(buffer, lineStart, read - lineStart);
+        oversized = line.size() > settings().getMaxLineBytes();
+      }
+    }
+    received += publishLine(brokerId, line.toByteArray(), oversized, requestId, inflight,
+        published, failed);
+
+    int pending = awaitDrain(inflight, requestId);
+    log.debug("MqttPublishStreamRequest - BrokerId: {}, RequestId: {}, received {} published {}",
+        brokerId, requestId, received, published.get());
+    return PublishStreamResponse.builder().brokerId(brokerId).received(received)
+        .published(published.get()).failed(failed.get()).pending(pending).build();
+  }
+
+  private int publishLine(Long brokerId, byte[] line, boolean oversized, String requestId,
+      Semaphore inflight, AtomicLong published, AtomicLong failed) {
+    if (!oversized && isBlank(line)) {
+      return 0;
+    }
+    MqttPublishMessageRequest message;
+    try {
+      if (oversized) {
+        throw new MqttPublishInputException(
+            "Line exceeds " + settings().getMaxLineBytes() + " bytes");
+      }
+      message = parseLine(line);
+    } catch (IOException | MqttPublishInputException e) {
+      log.error("MqttPublishStreamRequest - Skipping invalid line for request - {}: {}", requestId,
+          e.getMessage());
+      failed.incrementAndGet();
+      return 1;
+    }
+
+    // Stop reading the upload until the broker has acknowledged enough earlier messages
+    inflight.acquireUninterruptibly();
+    mqttPublisherService.publish(brokerId, message, requestId)
+        .orTimeout(settings().getPublishTimeoutMs(), TimeUnit.MILLISECONDS)
+        .whenComplete((ok, ex) -> {
+          inflight.release();
+          if (ex == null) {
+            published.incrementAndGet();
+          } else {
+            failed.incrementAndGet();
+          }
+        });
+    return 1;
+  }
+
+  /**
+   * Reads the message fields of one line. The payload is sliced out of the line bytes as-is
+   * instead of being bound to an object tree.
+   */
+  private MqttPublishMessageRequest parseLine(byte[] line) throws IOException {
+    var message = MqttPublishMessageRequest.builder();
+    try (JsonParser parser = objectMapper.getFactory().createParser(line)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new MqttPublishInputException("Line is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "topic" -> message.topic(parser.getValueAsString());
+          case "qos" -> message.qos(value == JsonToken.VALUE_NULL ? null : parser.getIntValue());
+          case "retain" -> message.retain(
+              value == JsonToken.VALUE_NULL ? null : parser.getBooleanValue());
+          case "payload" -> {
+            int start = (int) parser.currentTokenLocation().getByteOffset();
+            if (value.isScalarValue()) {
+              parser.finishToken();
+            } else {
+              parser.skipChildren();
+            }
+            int end = (int) parser.currentLocation().getByteOffset();
+            message.payload(Arrays.copyOfRange(line, start, end));
+          }
+          default -> parser.skipChildren();
+        }
+      }
+    }
+    return message.build();
+  }
+
+  /**
+   * Waits for the outstanding publishes and returns how many are still unresolved.
+   */
+  private int awaitDrain(Semaphore inflight, String requestId) {
+    try {
+      if (inflight.tryAcquire(settings().getMaxInflight(), settings().getDrainTimeoutMs(),
+          TimeUnit.MILLISECONDS)) {
+        return 0;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    int pending = settings().getMaxInflight() - inflight.availablePermits();
+    log.warn("MqttPublishStreamRequest - {} publishes still inflight for request - {}", pending,
+        requestId);
+    return pending;
+  }
+
+  private static boolean isBlank(byte[] line) {
+    for (byte b : line) {
+      if (!Character.isWhitespace(b)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private MqttProperties.Stream settings() {
+    return mqttProperties.getPublisher().getStream();
+  }
+}
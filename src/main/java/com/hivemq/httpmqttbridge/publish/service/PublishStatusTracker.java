@@ -0,0 +1,79 @@
+package com.hivemq.httpmqttbridge.publish.service;
+
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.publish.response.PublishResponse;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory status table of publishes accepted asynchronously. Entries expire {@code ttl-ms} after
+ * acceptance and the oldest entries are dropped once {@code max-entries} is reached.
+ */
+
+@Component
+@RequiredArgsConstructor
+public class PublishStatusTracker {
+
+  private final ConcurrentMap<String, TrackedPublish> statuses = new ConcurrentHashMap<>();
+  private final Queue<TrackedPublish> acceptanceOrder = new ConcurrentLinkedQueue<>();
+
+  private final MqttProperties mqttProperties;
+
+  public void accept(String requestId, PublishResponse response) {
+    long now = System.currentTimeMillis();
+    TrackedPublish tracked = new TrackedPublish(requestId,
+        now + mqttProperties.getPublisher().getStatus().getTtlMs(), response);
+    statuses.put(requestId, tracked);
+    acceptanceOrder.add(tracked);
+    evict(now);
+  }
+
+  public void complete(String requestId, PublishResponse response) {
+    TrackedPublish tracked = statuses.get(requestId);
+    if (tracked != null) {
+      tracked.response = response;
+    }
+  }
+
+  public Optional<PublishResponse> find(String requestId) {
+    TrackedPublish tracked = statuses.get(requestId);
+    if (tracked == null || tracked.isExpired(System.currentTimeMillis())) {
+      return Optional.empty();
+    }
+    return Optional.of(tracked.response);
+  }
+
+  private void evict(long now) {
+    int maxEntries = mqttProperties.getPublisher().getStatus().getMaxEntries();
+    TrackedPublish oldest;
+    while ((oldest = acceptanceOrder.peek()) != null
+        && (statuses.size() > maxEntries || oldest.isExpired(now))) {
+      if (acceptanceOrder.remove(oldest)) {
+        // Only removes the entry if the request id was not accepted again in the meantime
+        statuses.remove(oldest.requestId, oldest);
+      }
+    }
+  }
+
+  private static final class TrackedPublish {
+
+    private final String requestId;
+    private final long expiresAtMillis;
+    private volatile PublishResponse response;
+
+    private TrackedPublish(String requestId, long expiresAtMillis, PublishResponse response) {
+      this.requestId = requestId;
+      this.expiresAtMillis = expiresAtMillis;
+      this.response = response;
+    }
+
+    private boolean isExpired(long now) {
+      return now >= expiresAtMillis;
+    }
+  }
+}
@@ -1,14 +1,44 @@
 package com.hivemq.httpmqttbridge.subscribe.controller;
 
+import com.hivemq.httpmqttbridge.exception.MqttBrokerNotFoundException;
+import com.hivemq.httpmqttbridge.exception.PollSessionLimitException;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilter;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilterRegistry;
+import com.hivemq.httpmqttbridge.subscribe.registry.SubscriptionKey;
+import com.hivemq.httpmqttbridge.subscribe.registry.TopicTrie;
+import com.hivemq.httpmqttbridge.subscribe.request.PollSessionRequest;
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
+import com.hivemq.httpmqttbridge.subscribe.request.TopicSubscription;
+import com.hivemq.httpmqttbridge.subscribe.response.PollSessionResponse;
+import com.hivemq.httpmqttbridge.subscribe.response.PolledMessage;
+import com.hivemq.httpmqttbridge.subscribe.response.SseStreamStats;
 import com.hivemq.httpmqttbridge.subscribe.service.HiveMqttSubscriptionService;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSession;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSessionRegistry;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStreamRegistry;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
@@ -17,15 +47,60 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 @Slf4j
 public class MqttSubscriptionController {
 
+  private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
   private final HiveMqttSubscriptionService consumerService;
 
+  private final SseStreamRegistry sseStreamRegistry;
+
+  private final MessageFilterRegistry messageFilterRegistry;
+
+  private final PollSessionRegistry pollSessionRegistry;
+
+  @Value("${mqtt.subscription.sse.max-topics-per-stream:100}")
+  private int maxTopicsPerStream;
+
   @GetMapping(path = "/{brokerId}/receive/{topic:.+}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
   @Tag(name = "Subscribe to Messages", description = "API to subscribe and stream messages from MQTT brokers")
-  public SseEmitter stream(@PathVariable Long brokerId, @PathVariable("topic") String topic) {
+  public SseEmitter stream(@PathVariable Long brokerId, @PathVariable("topic") String topic,
+      @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId,
+      @RequestParam(value = "flushWindow", required = false) String flushWindow,
+      @RequestParam(value = "filter", required = false) String filter,
+      @RequestParam(value = "conflate", required = false) String conflate,
+      @RequestParam(value = "group", required = false) String group) {
+    SseStreamOptions options = SseStreamOptions.builder().lastEventId(parseEventId(lastEventId))
+        .flushWindow(parseDuration("flushWindow", flushWindow)).filter(compileFilter(filter))
+        .conflate(parseDuration("conflate", conflate)).group(parseGroup(group)).build();
+    SseEmitter emitter = new SseEmitter(0L);
+    try {
+      // Start streaming messages from the MQTT broker, resuming after the last received event
+      consumerService.stream(brokerId, topic, emitter, options);
+    } catch (Exception e) {
+      try {
+        emitter.send(
+            SseEmitter.event().name("error").data("Failed to start stream: " + e.getMessage()));
+      } catch (Exception ignored) {
+        log.error("Failed to send error stream: {}", e.getMessage());
+      }
+      emitter.completeWithError(e);
+    }
+    return emitter;
+  }
+
+  @GetMapping(path = "/receive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @Tag(name = "Subscribe to Messages", description = "API to stream several topic filters, possibly of different brokers, over one connection. Each topic parameter is <brokerId>:<topicFilter> with # and + URL-encoded; events carry the broker id and concrete topic")
+  public SseEmitter streamTopics(@RequestParam("topic") List<String> topics,
+      @RequestParam(value = "flushWindow", required = false) String flushWindow,
+      @RequestParam(value = "filter", required = false) String filter,
+      @RequestParam(value = "conflate", required = false) String conflate,
+      @RequestParam(value = "group", required = false) String group) {
+    List<TopicSubscription> subscriptions = parseTopics(topics);
+    SseStreamOptions options = SseStreamOptions.builder()
+        .flushWindow(parseDuration("flushWindow", flushWindow)).filter(compileFilter(filter))
+        .conflate(parseDuration("conflate", conflate)).group(parseGroup(group)).build();
     SseEmitter emitter = new SseEmitter(0L);
     try {
-      // Start streaming messages from the MQTT broker
-      consumerService.stream(brokerId, topic, emitter);
+      consumerService.stream(subscriptions, emitter, options);
     } catch (Exception e) {
       try {
         emitter.send(
@@ -38,5 +113,152 @@ public class MqttSubscriptionController {
     return emitter;
   }
 
+  @GetMapping(path = "/streams", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Tag(name = "Subscribe to Messages", description = "Queue depth and drop counters of the active SSE streams")
+  public List<SseStreamStats> streams() {
+    return sseStreamRegistry.stats();
+  }
+
+  @PostMapping(path = "/{brokerId}/sessions", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  @Tag(name = "Subscribe to Messages", description = "API to create a session that buffers messages for polling")
+  public CompletableFuture<ResponseEntity<PollSessionResponse>> createSession(
+      @PathVariable Long brokerId, @RequestBody @Valid PollSessionRequest request) {
+    MessageFilter filter = compileFilter(request.filter());
+    String group = parseGroup(request.group());
+    CompletableFuture<PollSession> created = pollSessionRegistry.create(brokerId, request.topic(),
+        group, filter);
+    return created.handle((session, ex) -> {
+      if (ex != null) {
+        throw toSessionError(brokerId, ex);
+      }
+      return ResponseEntity.created(URI.create("/mqtt/" + brokerId + "/sessions/" + session.id()))
+          .body(PollSessionResponse.builder().id(session.id()).brokerId(brokerId)
+              .topic(session.topic()).group(group)
+              .filter(filter != null ? filter.expression() : null)
+              .bufferCapacity(session.capacity())
+              .idleTimeoutMs(pollSessionRegistry.idleTimeoutMs()).build());
+    });
+  }
+
+  @GetMapping(path = "/{brokerId}/sessions/{sessionId}/poll", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Tag(name = "Subscribe to Messages", description = "API to take the buffered messages of a session, waiting for the first one")
+  public CompletableFuture<List<PolledMessage>> poll(@PathVariable Long brokerId,
+      @PathVariable String sessionId,
+      @RequestParam(value = "max", defaultValue = "500") int max,
+      @RequestParam(value = "wait", required = false) String wait,
+      @RequestParam(value = "ack", required = false) Long ack) {
+    Duration waitTime = parseDuration("wait", wait);
+    // Messages stay unacknowledged to the broker until a later poll acknowledges them
+    return pollSessionRegistry.poll(findSession(brokerId, sessionId), max,
+        waitTime != null ? waitTime.toMillis() : 0, ack);
+  }
+
+  @DeleteMapping(path = "/{brokerId}/sessions/{sessionId}")
+  @Tag(name = "Subscribe to Messages", description = "API to delete a session and its subscription")
+  public ResponseEntity<Void> deleteSession(@PathVariable Long brokerId,
+      @PathVariable String sessionId) {
+    pollSessionRegistry.delete(findSession(brokerId, sessionId));
+    return ResponseEntity.noContent().build();
+  }
+
+  private PollSession findSession(Long brokerId, String sessionId) {
+    return pollSessionRegistry.find(brokerId, sessionId).orElseThrow(
+        () -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+            "Session " + sessionId + " not found"));
+  }
+
+  private static ResponseStatusException toSessionError(Long brokerId, Throwable ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof MqttBrokerNotFoundException) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, cause.getMessage());
+      }
+      if (cause instanceof PollSessionLimitException) {
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, cause.getMessage());
+      }
+    }
+    log.error("Failed to create session for broker {}: {}", brokerId, ex.getMessage());
+    return new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+        "Failed to subscribe: " + ex.getMessage());
+  }
+
+  private List<TopicSubscription> parseTopics(List<String> topics) {
+    List<TopicSubscription> subscriptions;
+    try {
+      subscriptions = topics.stream().filter(topic -> !topic.isBlank())
+          .map(TopicSubscription::parse).distinct().toList();
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    if (subscriptions.isEmpty() || subscriptions.size() > maxTopicsPerStream) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "A stream needs between 1 and " + maxTopicsPerStream + " topics");
+    }
+    // A message matching two filters of the same broker would be written to the stream twice
+    for (int i = 0; i < subscriptions.size(); i++) {
+      for (int j = i + 1; j < subscriptions.size(); j++) {
+        TopicSubscription first = subscriptions.get(i);
+        TopicSubscription second = subscriptions.get(j);
+        if (first.brokerId().equals(second.brokerId())
+            && TopicTrie.overlaps(first.topicFilter(), second.topicFilter())) {
+          throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+              "Topic filters " + first + " and " + second + " overlap");
+        }
+      }
+    }
+    return subscriptions;
+  }
+
+  private static String parseGroup(String group) {
+    if (group == null || group.isBlank()) {
+      return null;
+    }
+    if (!SubscriptionKey.isValidGroup(group.trim())) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Invalid share group: " + group);
+    }
+    return group.trim();
+  }
 
-}
\ No newline at end of file
+  private static Long parseEventId(String lastEventId) {
+    if (lastEventId == null || lastEventId.isBlank()) {
+      return null;
+    }
+    try {
+      return Long.valueOf(lastEventId.trim());
+    } catch (NumberFormatException e) {
+      // Not one of our ids; stream live messages only
+      return null;
+    }
+  }
+
+  private MessageFilter compileFilter(String filter) {
+    if (filter == null || filter.isBlank()) {
+      return null;
+    }
+    try {
+      return messageFilterRegistry.compile(filter);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Invalid filter: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Parses durations such as {@code 5ms} or {@code 1s}; a plain number is read as milliseconds.
+   */
+  private static Duration parseDuration(String name, String value) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    try {
+      Duration duration = DurationStyle.detectAndParse(value.trim());
+      if (duration.isNegative()) {
+        throw new IllegalArgumentException("negative");
+      }
+      return duration;
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "Invalid " + name + " duration: " + value);
+    }
+  }
+}
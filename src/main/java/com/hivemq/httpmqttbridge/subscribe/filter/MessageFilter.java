@@ -0,0 +1,230 @@
+package com.hivemq.httpmqttbridge.subscribe.filter;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled content filter over JSON payloads. An expression is one or more conditions joined by
+ * {@code and}; a condition compares a dotted field path with a number, a quoted string,
+ * {@code true}, {@code false} or {@code null}, for example
+ * {@code temperature >= 20 and temperature < 30 and site.name == 'berlin'}. Instances are
+ * immutable and can be shared by any number of streams.
+ */
+public final class MessageFilter {
+
+  private final String expression;
+  private final List<Condition> conditions;
+
+  private MessageFilter(String expression, List<Condition> conditions) {
+    this.expression = expression;
+    this.conditions = conditions;
+  }
+
+  /**
+   * Compiles the expression.
+   *
+   * @throws IllegalArgumentException if the expression is not valid
+   */
+  public static MessageFilter compile(String expression) {
+    return new MessageFilter(expression, new Parser(expression).parse());
+  }
+
+  /**
+   * Whether the payload satisfies every condition. Payloads that are not JSON objects never
+   * match.
+   */
+  public boolean matches(JsonNode payload) {
+    if (payload == null || !payload.isObject()) {
+      return false;
+    }
+    for (Condition condition : conditions) {
+      if (!condition.matches(payload.at(condition.field()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String expression() {
+    return expression;
+  }
+
+  private enum Operator {
+    EQ, NE, GT, GE, LT, LE;
+
+    boolean test(int comparison) {
+      return switch (this) {
+        case EQ -> comparison == 0;
+        case NE -> comparison != 0;
+        case GT -> comparison > 0;
+        case GE -> comparison >= 0;
+        case LT -> comparison < 0;
+        case LE -> comparison <= 0;
+      };
+    }
+  }
+
+  private record Condition(JsonPointer field, Operator operator, Object value) {
+
+    boolean matches(JsonNode node) {
+      if (node.isMissingNode()) {
+        return false;
+      }
+      if (value == null) {
+        return (operator == Operator.EQ) == node.isNull();
+      }
+      if (value instanceof Double number) {
+        return node.isNumber() && operator.test(Double.compare(node.doubleValue(), number));
+      }
+      if (value instanceof Boolean bool) {
+        return node.isBoolean() && operator.test(node.booleanValue() == bool ? 0 : 1);
+      }
+      return node.isTextual() && operator.test(node.textValue().compareTo((String) value));
+    }
+  }
+
+  /**
+   * Recursive descent parser for {@code condition (and condition)*}.
+   */
+  private static final class Parser {
+
+    private final String input;
+    private int position;
+
+    private Parser(String input) {
+      this.input = input;
+    }
+
+    private List<Condition> parse() {
+      List<Condition> conditions = new ArrayList<>();
+      do {
+        conditions.add(condition());
+      } while (keyword("and") || symbol("&&"));
+      skipWhitespace();
+      if (position < input.length()) {
+        throw error("Unexpected '" + input.substring(position) + "'");
+      }
+      return conditions;
+    }
+
+    private Condition condition() {
+      String path = path();
+      Operator operator = operator();
+      Object value = literal();
+      if (value instanceof Boolean || value == null) {
+        if (operator != Operator.EQ && operator != Operator.NE) {
+          throw error("Only == and != can compare with " + value);
+        }
+      }
+      return new Condition(JsonPointer.compile("/" + path.replace("~", "~0")
+          .replace(".", "/")), operator, value);
+    }
+
+    private String path() {
+      skipWhitespace();
+      int start = position;
+      while (position < input.length() && isPathChar(input.charAt(position))) {
+        position++;
+      }
+      if (start == position) {
+        throw error("Expected a field name");
+      }
+      return input.substring(start, position);
+    }
+
+    private Operator operator() {
+      if (symbol("==") || symbol("=")) {
+        return Operator.EQ;
+      }
+      if (symbol("!=")) {
+        return Operator.NE;
+      }
+      if (symbol(">=")) {
+        return Operator.GE;
+      }
+      if (symbol("<=")) {
+        return Operator.LE;
+      }
+      if (symbol(">")) {
+        return Operator.GT;
+      }
+      if (symbol("<")) {
+        return Operator.LT;
+      }
+      throw error("Expected one of == != > >= < <=");
+    }
+
+    private Object literal() {
+      skipWhitespace();
+      if (position >= input.length()) {
+        throw error("Expected a value");
+      }
+      char first = input.charAt(position);
+      if (first == '\'' || first == '"') {
+        int end = input.indexOf(first, position + 1);
+        if (end < 0) {
+          throw error("Unterminated string");
+        }
+        String value = input.substring(position + 1, end);
+        position = end + 1;
+        return value;
+      }
+      if (keyword("true")) {
+        return Boolean.TRUE;
+      }
+      if (keyword("false")) {
+        return Boolean.FALSE;
+      }
+      if (keyword("null")) {
+        return null;
+      }
+      int start = position;
+      while (position < input.length() && "+-.eE0123456789".indexOf(input.charAt(position))
+          >= 0) {
+        position++;
+      }
+      try {
+        return Double.valueOf(input.substring(start, position));
+      } catch (NumberFormatException e) {
+        position = start;
+        throw error("Expected a number, a quoted string, true, false or null");
+      }
+    }
+
+    private boolean keyword(String keyword) {
+      skipWhitespace();
+      int end = position + keyword.length();
+      if (input.regionMatches(true, position, keyword, 0, keyword.length())
+          && (end == input.length() || !isPathChar(input.charAt(end)))) {
+        position = end;
+        return true;
+      }
+      return false;
+    }
+
+    private boolean symbol(String symbol) {
+      skipWhitespace();
+      if (input.startsWith(symbol, position)) {
+        position += symbol.length();
+        return true;
+      }
+      return false;
+    }
+
+    private void skipWhitespace() {
+      while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+        position++;
+      }
+    }
+
+    private static boolean isPathChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(message + " at position " + position);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.hivemq.httpmqttbridge.subscribe.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiles filter expressions once and hands the same {@link MessageFilter} to every stream that
+ * uses an identical expression. Payloads are parsed once per message, however many filtered
+ * streams it fans out to.
+ */
+
+@Component
+@RequiredArgsConstructor
+public class MessageFilterRegistry {
+
+  private final ObjectMapper objectMapper;
+
+  private final PayloadCompressor payloadCompressor;
+
+  private final ConcurrentMap<String, MessageFilter> filters = new ConcurrentHashMap<>();
+
+  @Value("${mqtt.subscription.filter.cache-size:1024}")
+  private int cacheSize;
+
+  /**
+   * Returns the compiled filter of the expression.
+   *
+   * @throws IllegalArgumentException if the expression is not valid
+   */
+  public MessageFilter compile(String expression) {
+    String key = expression.trim();
+    MessageFilter cached = filters.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    MessageFilter compiled = MessageFilter.compile(key);
+    if (filters.size() >= cacheSize) {
+      // Expressions beyond the limit are compiled per stream instead of growing the cache
+      return compiled;
+    }
+    MessageFilter existing = filters.putIfAbsent(key, compiled);
+    return existing != null ? existing : compiled;
+  }
+
+  public boolean matches(MessageFilter filter, InboundMessage message) {
+    return filter.matches(json(message));
+  }
+
+  /**
+   * The payload as a JSON tree, or a missing node if it is not JSON.
+   */
+  public JsonNode json(InboundMessage message) {
+    return message.json(this::readJson);
+  }
+
+  private JsonNode readJson(InboundMessage message) {
+    byte[] payload = payloadCompressor.decode(message.publish(),
+        message.publish().getPayloadAsBytes());
+    try {
+      return objectMapper.readTree(payload);
+    } catch (IOException e) {
+      // Not JSON; no filter matches it
+      return MissingNode.getInstance();
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscriptions of one broker connection. {@code byFilter} and the {@code onBroker} flags are
+ * guarded by this object's monitor; the trie can be matched without it.
+ */
+final class BrokerSubscriptions {
+
+  final Map<String, SharedSubscription> byFilter = new HashMap<>();
+  final TopicTrie<SharedSubscription> trie = new TopicTrie<>();
+  Mqtt5AsyncClient client;
+  // Ids start from the wall clock so they keep increasing across restarts
+  private final AtomicLong eventIds = new AtomicLong(System.currentTimeMillis() << 10);
+
+  long nextEventId() {
+    return eventIds.incrementAndGet();
+  }
+
+  /**
+   * Returns a broker subscription other than {@code excluded} whose filter covers the given one.
+   */
+  SharedSubscription findCover(String topicFilter, SharedSubscription excluded) {
+    for (SharedSubscription candidate : byFilter.values()) {
+      if (candidate != excluded && candidate.onBroker()
+          && TopicTrie.covers(candidate.topicFilter(), topicFilter)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,114 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+
+/**
+ * A message received from a broker together with its event id. Ids increase monotonically per
+ * broker and are shared by every filter and stream the message is delivered to. The encoded SSE
+ * frame and the parsed JSON payload are cached so fan-out to many streams encodes and parses the
+ * message only once.
+ *
+ * <p>With manual acknowledgement the message carries a hold count. Listeners that keep the message
+ * beyond {@link MessageListener#onMessage} {@link #retain()} it and {@link #release()} it once it
+ * has been written or dropped; the broker is acknowledged when the last hold is released.
+ */
+public final class InboundMessage {
+
+  private final long id;
+  private final Long brokerId;
+  private final Mqtt5Publish publish;
+  private final Runnable acknowledgement;
+  private final AtomicInteger holds = new AtomicInteger(1);
+  private volatile Set<DataWithMediaType> sseFrame;
+  private volatile Set<DataWithMediaType> taggedSseFrame;
+  private volatile JsonNode json;
+
+  public InboundMessage(long id, Mqtt5Publish publish) {
+    this(id, null, publish, null);
+  }
+
+  public InboundMessage(long id, Mqtt5Publish publish, Runnable acknowledgement) {
+    this(id, null, publish, acknowledgement);
+  }
+
+  /**
+   * Creates a message held once by the dispatcher, which runs {@code acknowledgement} when every
+   * hold has been released. A null acknowledgement makes retain and release no-ops.
+   */
+  public InboundMessage(long id, Long brokerId, Mqtt5Publish publish, Runnable acknowledgement) {
+    this.id = id;
+    this.brokerId = brokerId;
+    this.publish = publish;
+    this.acknowledgement = acknowledgement;
+  }
+
+  public long id() {
+    return id;
+  }
+
+  /**
+   * Broker the message was received from; null if unknown.
+   */
+  public Long brokerId() {
+    return brokerId;
+  }
+
+  public Mqtt5Publish publish() {
+    return publish;
+  }
+
+  public void retain() {
+    if (acknowledgement != null) {
+      holds.incrementAndGet();
+    }
+  }
+
+  public void release() {
+    if (acknowledgement != null && holds.decrementAndGet() == 0) {
+      acknowledgement.run();
+    }
+  }
+
+  /**
+   * Returns the cached SSE frame, encoding it on first use. Concurrent first calls may both
+   * encode; either result is equivalent.
+   */
+  public Set<DataWithMediaType> sseFrame(Function<InboundMessage, Set<DataWithMediaType>> encoder) {
+    Set<DataWithMediaType> frame = sseFrame;
+    if (frame == null) {
+      frame = encoder.apply(this);
+      sseFrame = frame;
+    }
+    return frame;
+  }
+
+  /**
+   * Like {@link #sseFrame}, for the frame that also names the broker and topic of the message.
+   */
+  public Set<DataWithMediaType> taggedSseFrame(
+      Function<InboundMessage, Set<DataWithMediaType>> encoder) {
+    Set<DataWithMediaType> frame = taggedSseFrame;
+    if (frame == null) {
+      frame = encoder.apply(this);
+      taggedSseFrame = frame;
+    }
+    return frame;
+  }
+
+  /**
+   * Returns the cached JSON payload tree, parsing it on first use.
+   */
+  public JsonNode json(Function<InboundMessage, JsonNode> parser) {
+    JsonNode node = json;
+    if (node == null) {
+      node = parser.apply(this);
+      json = node;
+    }
+    return node;
+  }
+}
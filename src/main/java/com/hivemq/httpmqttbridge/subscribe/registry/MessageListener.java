@@ -0,0 +1,19 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+/**
+ * Local consumer of the messages received for a shared broker subscription. Listeners that queue
+ * a message for later delivery retain it until it is delivered or dropped, see
+ * {@link InboundMessage#retain()}.
+ */
+@FunctionalInterface
+public interface MessageListener {
+
+  void onMessage(InboundMessage message);
+
+  /**
+   * Called before the replay of a resumed listener when messages up to {@code lostUpToId} are
+   * no longer recorded, so the replay that follows is incomplete.
+   */
+  default void onReplayGap(long lostUpToId) {
+  }
+}
@@ -0,0 +1,129 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+import com.hivemq.httpmqttbridge.subscribe.replay.ReplayRing;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One topic filter and the local listeners attached to it. The listener set is the reference
+ * count: the filter is removed when it becomes empty. A filter covered by a broader filter of
+ * the same broker is not subscribed on the broker itself; its messages arrive through the
+ * broader subscription. A merged filter only stands in on the broker for partially overlapping
+ * filters and never has listeners. With replay enabled the most recent messages are kept
+ * in a {@link ReplayRing} for listeners resuming from a {@code Last-Event-ID}. Messages of a
+ * share group go to one listener at a time, in turn.
+ */
+@Slf4j
+final class SharedSubscription {
+
+  private final SubscriptionKey key;
+  private final Set<MessageListener> listeners = new CopyOnWriteArraySet<>();
+  private final CompletableFuture<Void> subscribed = new CompletableFuture<>();
+  private final ReplayRing replayRing;
+  private boolean onBroker;
+  private boolean merged;
+  private ScheduledFuture<?> linger;
+  private int nextListener;
+
+  SharedSubscription(SubscriptionKey key, int replayBufferBytes) {
+    this.key = key;
+    this.replayRing = replayBufferBytes > 0 ? new ReplayRing(replayBufferBytes, key.brokerId())
+        : null;
+  }
+
+  /**
+   * Records the message for replay and hands it to every listener. Synchronized with
+   * {@link #join} so a joining listener sees each message exactly once, either replayed or live.
+   */
+  synchronized void dispatch(InboundMessage message) {
+    if (replayRing != null) {
+      replayRing.append(message);
+    }
+    if (key.group() != null) {
+      MessageListener[] members = listeners.toArray(MessageListener[]::new);
+      if (members.length > 0) {
+        deliver(members[Math.floorMod(nextListener++, members.length)], message);
+      }
+      return;
+    }
+    for (MessageListener listener : listeners) {
+      deliver(listener, message);
+    }
+  }
+
+  private void deliver(MessageListener listener, InboundMessage message) {
+    try {
+      listener.onMessage(message);
+    } catch (RuntimeException e) {
+      log.warn("Listener failed for broker {} filter {}: {}", key.brokerId(),
+          key.brokerTopicFilter(), e.getMessage());
+    }
+  }
+
+  /**
+   * Adds the listener after passing it the recorded messages newer than {@code lastEventId},
+   * preceded by a gap notice when some of them are no longer recorded.
+   */
+  synchronized void join(MessageListener listener, Long lastEventId) {
+    if (lastEventId != null && replayRing != null) {
+      if (lastEventId < replayRing.lostUpTo()) {
+        listener.onReplayGap(replayRing.lostUpTo());
+      }
+      replayRing.since(lastEventId).forEach(listener::onMessage);
+    }
+    listeners.add(listener);
+  }
+
+  /**
+   * Off-heap bytes taken by the replay ring, 0 without one.
+   */
+  int replayBufferBytes() {
+    return replayRing != null ? replayRing.capacity() : 0;
+  }
+
+  SubscriptionKey key() {
+    return key;
+  }
+
+  String topicFilter() {
+    return key.topicFilter();
+  }
+
+  Set<MessageListener> listeners() {
+    return listeners;
+  }
+
+  CompletableFuture<Void> subscribed() {
+    return subscribed;
+  }
+
+  boolean onBroker() {
+    return onBroker;
+  }
+
+  void onBroker(boolean onBroker) {
+    this.onBroker = onBroker;
+  }
+
+  /**
+   * Whether the filter was only created to cover partially overlapping filters on the broker.
+   */
+  boolean merged() {
+    return merged;
+  }
+
+  void merged(boolean merged) {
+    this.merged = merged;
+  }
+
+  ScheduledFuture<?> linger() {
+    return linger;
+  }
+
+  void linger(ScheduledFuture<?> linger) {
+    this.linger = linger;
+  }
+}
@@ -0,0 +1,29 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+/**
+ * Identifies one broker subscription shared by all local listeners of the same filter. With a
+ * {@code group} the filter is subscribed as the MQTT 5 shared subscription
+ * {@code $share/<group>/<topicFilter>}.
+ */
+public record SubscriptionKey(Long brokerId, String group, String topicFilter) {
+
+  public SubscriptionKey(Long brokerId, String topicFilter) {
+    this(brokerId, null, topicFilter);
+  }
+
+  /**
+   * The filter as sent in SUBSCRIBE and UNSUBSCRIBE packets.
+   */
+  public String brokerTopicFilter() {
+    return group == null ? topicFilter : "$share/" + group + "/" + topicFilter;
+  }
+
+  /**
+   * Whether the name can be used as a share name: non-empty and without {@code /}, {@code +} or
+   * {@code #}.
+   */
+  public static boolean isValidGroup(String group) {
+    return group != null && !group.isEmpty() && group.chars()
+        .noneMatch(c -> c == '/' || c == '+' || c == '#');
+  }
+}
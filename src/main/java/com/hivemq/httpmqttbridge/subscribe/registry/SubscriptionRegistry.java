@@ -0,0 +1,514 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5RetainHandling;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.external.client.hivemq.MqttClientExecutors;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reference counted subscriptions per (broker, topic filter). The first listener of a filter
+ * subscribes on the broker, later listeners join the existing subscription and the filter is
+ * unsubscribed when the last listener detaches.
+ *
+ * <p>Each broker client has a single global publish callback, run on the shared callback pool
+ * rather than the client's I/O thread. Received messages are matched against a {@link TopicTrie}
+ * of the active filters and handed to their listeners. The client routes a PUBLISH to its
+ * callbacks by topic, not by subscription identifier, so a broker sending one copy per matching
+ * subscription would make the callback see a message twice. No two broker subscriptions of a
+ * connection therefore ever match the same topic:
+ * <ul>
+ *   <li>a filter covered by a broader broker subscription is not subscribed on the broker at all;
+ *   <li>a filter partially overlapping a broker subscription, such as {@code a/b/#} next to
+ *       {@code a/+/c}, is merged with it into a filter covering both, here {@code a/+/#}, which
+ *       is subscribed instead of either. A merged filter has no listeners of its own; it is
+ *       unsubscribed once no filter it covers is left. It is wider than needed, the trie drops
+ *       the extra messages.
+ * </ul>
+ * A broader subscription replacing narrower ones is subscribed before they are unsubscribed, so
+ * nothing is lost, and only a message arriving between the two acknowledgements can be delivered
+ * twice.
+ *
+ * <p>The broker sends retained messages when a filter is subscribed on it. A listener joining a
+ * filter that is already active, or covered by an active broader filter, does not receive the
+ * retained messages again.
+ *
+ * <p>Every received message gets a per-broker event id. With {@code mqtt.subscription.replay.*}
+ * enabled each filter records its recent messages in an off-heap ring of {@code buffer-bytes},
+ * and a filter that loses its last listener is kept for {@code linger-ms} so a reconnecting
+ * stream can resume where it left off. The rings of all filters share a budget of
+ * {@code max-total-bytes}; filters created once it is used up get no ring.
+ *
+ * <p>Filters attached with a share {@code group} are subscribed as {@code $share/<group>/...}, so
+ * the broker spreads their messages over every bridge node in the group. Each group must use its
+ * own client: a shared and a plain subscription on one connection can match the same message,
+ * and the global callback could not tell the two deliveries apart. Within a node a group message
+ * goes to one of the local listeners in turn, and is not recorded for replay.
+ *
+ * <p>With {@code mqtt.subscription.flow-control.manual-ack} a message is acknowledged to the
+ * broker only after every listener holding it has released it, so the broker's receive-maximum
+ * window limits how far delivery runs ahead of the HTTP consumers.
+ *
+ * <p>When a broker is evicted its subscriptions are dropped; the SSE streams and poll sessions
+ * attached to them are ended by their own registries.
+ */
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SubscriptionRegistry {
+
+  private static final long UNSUBSCRIBE_TIMEOUT_MS = 2000;
+
+  private final MqttClientExecutors mqttClientExecutors;
+
+  private final ConcurrentMap<Scope, BrokerSubscriptions> brokers = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService lingerScheduler =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mqtt-subscription-linger");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  @Value("${mqtt.subscription.mqtt.timeout-ms:5000}")
+  private long subscribeTimeoutMs;
+
+  @Value("${mqtt.subscription.flow-control.manual-ack:false}")
+  private boolean manualAck;
+
+  @Value("${mqtt.subscription.replay.buffer-bytes:0}")
+  private int replayBufferBytes;
+
+  @Value("${mqtt.subscription.replay.max-total-bytes:67108864}")
+  private long replayMaxTotalBytes;
+
+  @Value("${mqtt.subscription.replay.linger-ms:0}")
+  private long lingerMs;
+
+  private final AtomicLong replayBytesInUse = new AtomicLong();
+
+  @PreDestroy
+  void stop() {
+    lingerScheduler.shutdownNow();
+  }
+
+  /**
+   * Attaches the listener to the shared subscription of the filter, subscribing on the broker if
+   * no active filter covers it yet. The returned future completes once messages for the filter
+   * are being received.
+   */
+  public CompletableFuture<Void> attach(Long brokerId, Mqtt5AsyncClient client, String topicFilter,
+      MessageListener listener) {
+    return attach(brokerId, client, topicFilter, listener, null);
+  }
+
+  /**
+   * Like {@link #attach(Long, Mqtt5AsyncClient, String, MessageListener)}, but first replays the
+   * recorded messages of the filter that are newer than {@code lastEventId}, if any.
+   */
+  public CompletableFuture<Void> attach(Long brokerId, Mqtt5AsyncClient client, String topicFilter,
+      MessageListener listener, Long lastEventId) {
+    return attach(brokerId, null, client, topicFilter, listener, lastEventId);
+  }
+
+  /**
+   * Attaches the listener to the filter within the share group, or to the plain filter when
+   * {@code group} is null. The client must be dedicated to the group.
+   */
+  public CompletableFuture<Void> attach(Long brokerId, String group, Mqtt5AsyncClient client,
+      String topicFilter, MessageListener listener, Long lastEventId) {
+    BrokerSubscriptions broker = brokers.computeIfAbsent(new Scope(brokerId, group),
+        id -> new BrokerSubscriptions());
+    SharedSubscription shared;
+    SharedSubscription feeder;
+    Takeover takeover = null;
+    synchronized (broker) {
+      registerCallback(brokerId, broker, client);
+      SharedSubscription existing = broker.byFilter.get(topicFilter);
+      if (existing != null && !existing.merged()) {
+        cancelLinger(existing);
+        existing.join(listener, lastEventId);
+        return existing.subscribed();
+      }
+      shared = new SharedSubscription(new SubscriptionKey(brokerId, group, topicFilter),
+          group == null ? reserveReplayBytes(brokerId, topicFilter) : 0);
+      shared.listeners().add(listener);
+      broker.byFilter.put(topicFilter, shared);
+      broker.trie.add(topicFilter, shared);
+      if (existing != null) {
+        // The filter was merged on the broker already and now gets listeners of its own
+        broker.trie.remove(topicFilter, existing);
+        shared.onBroker(existing.onBroker());
+        feeder = existing;
+      } else {
+        feeder = broker.findCover(topicFilter, shared);
+        if (feeder == null) {
+          takeover = plan(broker, shared);
+          feeder = takeover.subscription();
+        }
+      }
+    }
+
+    if (takeover != null && takeover.send()) {
+      subscribe(broker, takeover);
+    }
+    if (feeder != shared) {
+      pipe(feeder.subscribed(), shared);
+    }
+    return shared.subscribed();
+  }
+
+  /**
+   * Detaches the listener. When no listener is left the filter is released, after
+   * {@code linger-ms} if replay is enabled.
+   */
+  public void detach(Long brokerId, String topicFilter, MessageListener listener) {
+    detach(brokerId, null, topicFilter, listener);
+  }
+
+  /**
+   * Detaches the listener from the filter within the share group.
+   */
+  public void detach(Long brokerId, String group, String topicFilter, MessageListener listener) {
+    BrokerSubscriptions broker = brokers.get(new Scope(brokerId, group));
+    if (broker == null) {
+      return;
+    }
+    SharedSubscription shared;
+    synchronized (broker) {
+      shared = broker.byFilter.get(topicFilter);
+      if (shared == null || !shared.listeners().remove(listener) || !shared.listeners()
+          .isEmpty()) {
+        return;
+      }
+      if (shared.replayBufferBytes() > 0 && lingerMs > 0) {
+        // Keep receiving for a while so a reconnecting stream can resume from the replay ring
+        shared.linger(lingerScheduler.schedule(() -> release(broker, shared), lingerMs,
+            TimeUnit.MILLISECONDS));
+        return;
+      }
+    }
+    release(broker, shared);
+  }
+
+  /**
+   * Drops the subscriptions of an evicted broker. Its clients are already disconnected, so
+   * nothing is unsubscribed; the next attach subscribes again through the broker's new client.
+   * Runs before the other listeners of the event, so the streams and sessions they end find
+   * nothing left to detach from.
+   */
+  @EventListener
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  void onBrokerEvicted(MqttBrokerEvictedEvent event) {
+    brokers.entrySet().removeIf(entry -> {
+      if (!entry.getKey().brokerId().equals(event.brokerId())) {
+        return false;
+      }
+      BrokerSubscriptions broker = entry.getValue();
+      synchronized (broker) {
+        for (SharedSubscription shared : broker.byFilter.values()) {
+          cancelLinger(shared);
+          shared.onBroker(false);
+          replayBytesInUse.addAndGet(-shared.replayBufferBytes());
+        }
+        broker.byFilter.clear();
+      }
+      log.debug("Dropped subscriptions of evicted broker {} group {}", event.brokerId(),
+          entry.getKey().group());
+      return true;
+    });
+  }
+
+  /**
+   * Number of local listeners attached to the filter.
+   */
+  public int listenerCount(Long brokerId, String topicFilter) {
+    BrokerSubscriptions broker = brokers.get(new Scope(brokerId, null));
+    if (broker == null) {
+      return 0;
+    }
+    synchronized (broker) {
+      SharedSubscription shared = broker.byFilter.get(topicFilter);
+      return shared == null ? 0 : shared.listeners().size();
+    }
+  }
+
+  /**
+   * Removes a filter without listeners. If it was subscribed on the broker, the filters it
+   * covered are subscribed before it is unsubscribed. Merged filters that no longer cover any
+   * filter are unsubscribed as well.
+   */
+  private void release(BrokerSubscriptions broker, SharedSubscription shared) {
+    String topicFilter = shared.topicFilter();
+    List<Takeover> takeovers = new ArrayList<>();
+    List<SharedSubscription> unused = new ArrayList<>();
+    boolean onBroker;
+    synchronized (broker) {
+      if (!shared.listeners().isEmpty() || broker.byFilter.get(topicFilter) != shared) {
+        return;
+      }
+      broker.byFilter.remove(topicFilter);
+      broker.trie.remove(topicFilter, shared);
+      replayBytesInUse.addAndGet(-shared.replayBufferBytes());
+      onBroker = shared.onBroker();
+      if (onBroker) {
+        shared.onBroker(false);
+        List<SharedSubscription> orphans = new ArrayList<>();
+        for (SharedSubscription other : broker.byFilter.values()) {
+          if (!other.onBroker() && TopicTrie.covers(topicFilter, other.topicFilter())
+              && !coveredByAny(other, broker)) {
+            orphans.add(other);
+          }
+        }
+        for (SharedSubscription orphan : orphans) {
+          // An earlier orphan may have been merged into a filter covering this one
+          if (broker.findCover(orphan.topicFilter(), orphan) == null) {
+            takeovers.add(plan(broker, orphan));
+          }
+        }
+      }
+      for (SharedSubscription other : broker.byFilter.values()) {
+        if (other.merged() && coversNone(other, broker)) {
+          unused.add(other);
+        }
+      }
+      for (SharedSubscription merged : unused) {
+        broker.byFilter.remove(merged.topicFilter());
+        broker.trie.remove(merged.topicFilter(), merged);
+        merged.onBroker(false);
+      }
+    }
+
+    // The released subscription keeps feeding its filters until the orphans are subscribed
+    CompletableFuture<?>[] resubscribed = takeovers.stream().filter(Takeover::send)
+        .map(takeover -> subscribe(broker, takeover)).toArray(CompletableFuture[]::new);
+    if (onBroker) {
+      CompletableFuture.allOf(resubscribed).whenComplete((ok, ex) -> unsubscribe(broker, shared));
+    }
+    unused.forEach(merged -> unsubscribe(broker, merged));
+  }
+
+  /**
+   * Chooses the broker subscription for a filter that no broker subscription covers: the filter
+   * itself, or the filter merged with every broker subscription it partially overlaps, repeated
+   * until the result overlaps none. The chosen subscription is marked as on the broker, and the
+   * broker subscriptions it covers are recorded to be unsubscribed once it is active.
+   */
+  private Takeover plan(BrokerSubscriptions broker, SharedSubscription filter) {
+    String target = filter.topicFilter();
+    boolean widened = true;
+    while (widened) {
+      widened = false;
+      for (SharedSubscription other : broker.byFilter.values()) {
+        if (other.onBroker() && TopicTrie.overlaps(target, other.topicFilter())
+            && !TopicTrie.covers(target, other.topicFilter())) {
+          target = TopicTrie.join(target, other.topicFilter());
+          widened = true;
+        }
+      }
+    }
+
+    SharedSubscription subscription = broker.byFilter.get(target);
+    if (subscription != null && subscription.onBroker()) {
+      // Merged into a broker subscription that already covers everything it overlaps
+      return new Takeover(subscription, List.of(), false);
+    }
+    if (subscription == null) {
+      SubscriptionKey key = filter.key();
+      subscription = new SharedSubscription(new SubscriptionKey(key.brokerId(), key.group(),
+          target), 0);
+      subscription.merged(true);
+      broker.byFilter.put(target, subscription);
+      broker.trie.add(target, subscription);
+      log.debug("Merged broker {} filter {} into {}", key.brokerId(), filter.topicFilter(),
+          target);
+    }
+    subscription.onBroker(true);
+    List<String> covered = new ArrayList<>();
+    for (SharedSubscription other : broker.byFilter.values()) {
+      if (other != subscription && other.onBroker()
+          && TopicTrie.covers(target, other.topicFilter())) {
+        covered.add(other.topicFilter());
+      }
+    }
+    return new Takeover(subscription, covered, true);
+  }
+
+  /**
+   * Takes a replay ring out of the {@code max-total-bytes} budget, or none when it is used up.
+   */
+  private int reserveReplayBytes(Long brokerId, String topicFilter) {
+    if (replayBufferBytes <= 0) {
+      return 0;
+    }
+    if (replayBytesInUse.addAndGet(replayBufferBytes) > replayMaxTotalBytes) {
+      replayBytesInUse.addAndGet(-replayBufferBytes);
+      log.warn("Replay budget of {} bytes used up, broker {} filter {} cannot be resumed",
+          replayMaxTotalBytes, brokerId, topicFilter);
+      return 0;
+    }
+    return replayBufferBytes;
+  }
+
+  private static void cancelLinger(SharedSubscription shared) {
+    if (shared.linger() != null) {
+      shared.linger().cancel(false);
+      shared.linger(null);
+    }
+  }
+
+  private void dispatch(Long brokerId, BrokerSubscriptions broker, Mqtt5Publish publish) {
+    InboundMessage message = new InboundMessage(broker.nextEventId(), brokerId, publish,
+        manualAck ? publish::acknowledge : null);
+    try {
+      broker.trie.match(publish.getTopic().toString(), shared -> shared.dispatch(message));
+    } finally {
+      // Acknowledges right away unless a listener still holds the message
+      message.release();
+    }
+  }
+
+  private void registerCallback(Long brokerId, BrokerSubscriptions broker,
+      Mqtt5AsyncClient client) {
+    if (broker.client == client) {
+      return;
+    }
+    broker.client = client;
+    if (manualAck) {
+      client.publishes(MqttGlobalPublishFilter.SUBSCRIBED,
+          publish -> dispatch(brokerId, broker, publish),
+          mqttClientExecutors.callbackExecutor(), true);
+    } else {
+      client.publishes(MqttGlobalPublishFilter.SUBSCRIBED,
+          publish -> dispatch(brokerId, broker, publish), mqttClientExecutors.callbackExecutor());
+    }
+    log.debug("Registered publish callback for broker {}", brokerId);
+  }
+
+  /**
+   * Subscribes the chosen filter and then drops the narrower broker subscriptions it covers.
+   */
+  private CompletableFuture<Void> subscribe(BrokerSubscriptions broker, Takeover takeover) {
+    SharedSubscription subscription = takeover.subscription();
+    return subscribe(broker, subscription).thenRun(() -> takeover.covered().forEach(filter -> {
+      SharedSubscription other;
+      synchronized (broker) {
+        other = broker.byFilter.get(filter);
+        if (!subscription.onBroker() || other == null || !other.onBroker()) {
+          return;
+        }
+        other.onBroker(false);
+        if (other.merged()) {
+          broker.byFilter.remove(filter);
+          broker.trie.remove(filter, other);
+        }
+      }
+      unsubscribe(broker, other);
+    }));
+  }
+
+  private CompletableFuture<Void> subscribe(BrokerSubscriptions broker,
+      SharedSubscription shared) {
+    SubscriptionKey key = shared.key();
+    log.debug("Subscribing broker {} to filter {}", key.brokerId(), key.brokerTopicFilter());
+    return broker.client.subscribeWith().topicFilter(key.brokerTopicFilter())
+        .qos(MqttQos.AT_LEAST_ONCE).retainHandling(Mqtt5RetainHandling.SEND).send()
+        .orTimeout(subscribeTimeoutMs, TimeUnit.MILLISECONDS).handle((subAck, ex) -> {
+          if (ex != null) {
+            // Let the next listener retry instead of joining a failed subscription
+            synchronized (broker) {
+              if (broker.byFilter.remove(key.topicFilter(), shared)) {
+                broker.trie.remove(key.topicFilter(), shared);
+                replayBytesInUse.addAndGet(-shared.replayBufferBytes());
+              }
+              shared.onBroker(false);
+            }
+            shared.subscribed().completeExceptionally(ex);
+            return null;
+          }
+          shared.subscribed().complete(null);
+          return null;
+        });
+  }
+
+  private void unsubscribe(BrokerSubscriptions broker, SharedSubscription shared) {
+    SubscriptionKey key = shared.key();
+    shared.subscribed().whenComplete((ok, subscribeEx) -> {
+      synchronized (broker) {
+        SharedSubscription current = broker.byFilter.get(key.topicFilter());
+        if (subscribeEx != null || (current != null && current.onBroker())) {
+          // Never subscribed, or the filter was subscribed again in the meantime
+          return;
+        }
+      }
+      log.debug("Unsubscribing broker {} from filter {}", key.brokerId(), key.brokerTopicFilter());
+      broker.client.unsubscribeWith().topicFilter(key.brokerTopicFilter()).send()
+          .orTimeout(UNSUBSCRIBE_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((unsubAck, ex) -> {
+            if (ex != null) {
+              log.error("Error unsubscribing from topic - {}", key.brokerTopicFilter(), ex);
+            }
+          });
+    });
+  }
+
+  private static boolean coversNone(SharedSubscription merged, BrokerSubscriptions broker) {
+    for (SharedSubscription other : broker.byFilter.values()) {
+      if (other != merged && TopicTrie.covers(merged.topicFilter(), other.topicFilter())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean coveredByAny(SharedSubscription filter, BrokerSubscriptions broker) {
+    for (SharedSubscription other : broker.byFilter.values()) {
+      if (other != filter && !other.onBroker() && TopicTrie.covers(other.topicFilter(),
+          filter.topicFilter()) && !TopicTrie.covers(filter.topicFilter(), other.topicFilter())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void pipe(CompletableFuture<Void> source, SharedSubscription target) {
+    source.whenComplete((ok, ex) -> {
+      if (ex != null) {
+        target.subscribed().completeExceptionally(ex);
+      } else {
+        target.subscribed().complete(null);
+      }
+    });
+  }
+
+  private record Scope(Long brokerId, String group) {
+
+  }
+
+  /**
+   * A broker subscription chosen for a filter, whether it still has to be sent, and the filters
+   * of the broker subscriptions it replaces once active.
+   */
+  private record Takeover(SharedSubscription subscription, List<String> covered, boolean send) {
+
+  }
+}
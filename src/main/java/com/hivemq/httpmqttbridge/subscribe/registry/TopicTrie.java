@@ -0,0 +1,166 @@
+package com.hivemq.httpmqttbridge.subscribe.registry;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * Topic filter trie. Filters are stored one level per node, so matching a topic visits at most
+ * the exact, {@code +} and {@code #} branches of each level and costs time proportional to the
+ * topic depth rather than to the number of filters. Matching is lock free; mutations are
+ * serialized.
+ *
+ * @param <T> value attached to a filter
+ */
+public final class TopicTrie<T> {
+
+  private static final String SINGLE_LEVEL = "+";
+  private static final String MULTI_LEVEL = "#";
+
+  private final Node<T> root = new Node<>();
+
+  public synchronized void add(String filter, T value) {
+    Node<T> node = root;
+    for (String level : levels(filter)) {
+      node = node.children.computeIfAbsent(level, l -> new Node<>());
+    }
+    node.values.add(value);
+  }
+
+  public synchronized boolean remove(String filter, T value) {
+    return remove(root, levels(filter), 0, value);
+  }
+
+  /**
+   * Passes every value whose filter matches the topic to the consumer. Wildcards in the first
+   * level do not match topics starting with {@code $}.
+   */
+  public void match(String topic, Consumer<T> consumer) {
+    match(root, levels(topic), 0, topic.startsWith("$"), consumer);
+  }
+
+  /**
+   * Whether every topic matched by {@code filter} is also matched by {@code cover}.
+   */
+  public static boolean covers(String cover, String filter) {
+    String[] coverLevels = levels(cover);
+    String[] filterLevels = levels(filter);
+    for (int i = 0; ; i++) {
+      if (i == coverLevels.length) {
+        return i == filterLevels.length;
+      }
+      String level = coverLevels[i];
+      if (i == 0 && filter.startsWith("$") && isWildcard(level)) {
+        return false;
+      }
+      if (level.equals(MULTI_LEVEL)) {
+        return true;
+      }
+      if (i == filterLevels.length || filterLevels[i].equals(MULTI_LEVEL)) {
+        return false;
+      }
+      if (!level.equals(SINGLE_LEVEL) && !level.equals(filterLevels[i])) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Whether some topic is matched by both filters.
+   */
+  public static boolean overlaps(String first, String second) {
+    String[] firstLevels = levels(first);
+    String[] secondLevels = levels(second);
+    for (int i = 0; ; i++) {
+      String a = i < firstLevels.length ? firstLevels[i] : null;
+      String b = i < secondLevels.length ? secondLevels[i] : null;
+      if (a == null && b == null) {
+        return true;
+      }
+      if (i == 0 && (isWildcard(a) && b.startsWith("$") || isWildcard(b) && a.startsWith("$"))) {
+        return false;
+      }
+      if (MULTI_LEVEL.equals(a) || MULTI_LEVEL.equals(b)) {
+        // "a/#" also matches "a"
+        return true;
+      }
+      if (a == null || b == null
+          || !a.equals(SINGLE_LEVEL) && !b.equals(SINGLE_LEVEL) && !a.equals(b)) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns a filter covering both: equal levels are kept, differing ones become {@code +}, and
+   * from the first {@code #} or the end of the shorter filter on it ends in {@code #}.
+   */
+  public static String join(String first, String second) {
+    String[] firstLevels = levels(first);
+    String[] secondLevels = levels(second);
+    StringJoiner joined = new StringJoiner("/");
+    for (int i = 0; ; i++) {
+      if (i == firstLevels.length && i == secondLevels.length) {
+        return joined.toString();
+      }
+      if (i == firstLevels.length || i == secondLevels.length
+          || firstLevels[i].equals(MULTI_LEVEL) || secondLevels[i].equals(MULTI_LEVEL)) {
+        return joined.add(MULTI_LEVEL).toString();
+      }
+      joined.add(firstLevels[i].equals(secondLevels[i]) ? firstLevels[i] : SINGLE_LEVEL);
+    }
+  }
+
+  private static <T> void match(Node<T> node, String[] levels, int index, boolean system,
+      Consumer<T> consumer) {
+    boolean wildcards = !(index == 0 && system);
+    Node<T> multi = wildcards ? node.children.get(MULTI_LEVEL) : null;
+    if (multi != null) {
+      // "a/#" also matches "a"
+      multi.values.forEach(consumer);
+    }
+    if (index == levels.length) {
+      node.values.forEach(consumer);
+      return;
+    }
+    Node<T> single = wildcards ? node.children.get(SINGLE_LEVEL) : null;
+    if (single != null) {
+      match(single, levels, index + 1, system, consumer);
+    }
+    Node<T> exact = node.children.get(levels[index]);
+    if (exact != null) {
+      match(exact, levels, index + 1, system, consumer);
+    }
+  }
+
+  private static <T> boolean remove(Node<T> node, String[] levels, int index, T value) {
+    if (index == levels.length) {
+      return node.values.remove(value);
+    }
+    Node<T> child = node.children.get(levels[index]);
+    if (child == null || !remove(child, levels, index + 1, value)) {
+      return false;
+    }
+    if (child.values.isEmpty() && child.children.isEmpty()) {
+      node.children.remove(levels[index]);
+    }
+    return true;
+  }
+
+  private static boolean isWildcard(String level) {
+    return level.equals(SINGLE_LEVEL) || level.equals(MULTI_LEVEL);
+  }
+
+  private static String[] levels(String topic) {
+    return topic.split("/", -1);
+  }
+
+  private static final class Node<T> {
+
+    private final Map<String, Node<T>> children = new ConcurrentHashMap<>();
+    private final Set<T> values = new CopyOnWriteArraySet<>();
+  }
+}
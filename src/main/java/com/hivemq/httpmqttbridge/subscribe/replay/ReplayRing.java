@@ -0,0 +1,136 @@
+package com.hivemq.httpmqttbridge.subscribe.replay;
+
+import static com.hivemq.httpmqttbridge.common.codec.PayloadCodec.CONTENT_ENCODING_PROPERTY;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishBuilder;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded ring of the most recent messages of one subscription, kept in a direct buffer outside
+ * the heap. Appending evicts the oldest entries once the byte capacity is reached. Entries are
+ * stored as id, length, topic, content-encoding and the payload as received. The id of the newest
+ * message that was evicted, or too large to be stored, is kept so a resume from before it can be
+ * told that messages are missing.
+ */
+public final class ReplayRing {
+
+  private static final int ENTRY_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private final ByteBuffer buffer;
+  private final Long brokerId;
+  // Absolute byte offsets; the buffer position is the offset modulo the capacity
+  private long head;
+  private long tail;
+  private long lostUpTo = Long.MIN_VALUE;
+
+  public ReplayRing(int capacityBytes) {
+    this(capacityBytes, null);
+  }
+
+  /**
+   * Creates a ring whose replayed messages carry the id of the broker they were received from.
+   */
+  public ReplayRing(int capacityBytes, Long brokerId) {
+    buffer = ByteBuffer.allocateDirect(capacityBytes);
+    this.brokerId = brokerId;
+  }
+
+  public int capacity() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Stores the message, evicting older ones as needed. Messages larger than the ring are not
+   * stored and count as lost.
+   */
+  public synchronized void append(InboundMessage message) {
+    byte[] entry = encode(message);
+    if (entry.length > buffer.capacity()) {
+      lostUpTo = Math.max(lostUpTo, message.id());
+      return;
+    }
+    while (tail - head + entry.length > buffer.capacity()) {
+      ByteBuffer header = ByteBuffer.wrap(read(head, ENTRY_HEADER_SIZE));
+      lostUpTo = Math.max(lostUpTo, header.getLong());
+      head += ENTRY_HEADER_SIZE + header.getInt();
+    }
+    write(tail, entry);
+    tail += entry.length;
+  }
+
+  /**
+   * Returns the stored messages with an id greater than {@code lastEventId}, oldest first.
+   */
+  public synchronized List<InboundMessage> since(long lastEventId) {
+    List<InboundMessage> messages = new ArrayList<>();
+    for (long position = head; position < tail; ) {
+      ByteBuffer header = ByteBuffer.wrap(read(position, ENTRY_HEADER_SIZE));
+      long id = header.getLong();
+      int length = header.getInt();
+      if (id > lastEventId) {
+        messages.add(new InboundMessage(id, brokerId,
+            decode(read(position + ENTRY_HEADER_SIZE, length)), null));
+      }
+      position += ENTRY_HEADER_SIZE + length;
+    }
+    return messages;
+  }
+
+  /**
+   * Id of the newest message that is no longer or was never stored, {@link Long#MIN_VALUE} if
+   * none. Replaying after an older id misses messages.
+   */
+  public synchronized long lostUpTo() {
+    return lostUpTo;
+  }
+
+  private static byte[] encode(InboundMessage message) {
+    Mqtt5Publish publish = message.publish();
+    byte[] topic = publish.getTopic().toString().getBytes(StandardCharsets.UTF_8);
+    byte[] encoding = publish.getUserProperties().asList().stream()
+        .filter(p -> p.getName().toString().equals(CONTENT_ENCODING_PROPERTY)).findFirst()
+        .map(p -> p.getValue().toString().getBytes(StandardCharsets.UTF_8)).orElse(new byte[0]);
+    byte[] payload = publish.getPayloadAsBytes();
+    int length = Short.BYTES + topic.length + Short.BYTES + encoding.length + payload.length;
+    return ByteBuffer.allocate(ENTRY_HEADER_SIZE + length).putLong(message.id()).putInt(length)
+        .putShort((short) topic.length).put(topic).putShort((short) encoding.length).put(encoding)
+        .put(payload).array();
+  }
+
+  private static Mqtt5Publish decode(byte[] bytes) {
+    ByteBuffer record = ByteBuffer.wrap(bytes);
+    byte[] topic = new byte[Short.toUnsignedInt(record.getShort())];
+    record.get(topic);
+    byte[] encoding = new byte[Short.toUnsignedInt(record.getShort())];
+    record.get(encoding);
+    Mqtt5PublishBuilder.Complete builder = Mqtt5Publish.builder()
+        .topic(new String(topic, StandardCharsets.UTF_8));
+    if (encoding.length > 0) {
+      builder = builder.userProperties()
+          .add(CONTENT_ENCODING_PROPERTY, new String(encoding, StandardCharsets.UTF_8))
+          .applyUserProperties();
+    }
+    return builder.payload(record.slice()).build();
+  }
+
+  private void write(long position, byte[] bytes) {
+    int offset = (int) (position % buffer.capacity());
+    int first = Math.min(bytes.length, buffer.capacity() - offset);
+    buffer.put(offset, bytes, 0, first);
+    buffer.put(0, bytes, first, bytes.length - first);
+  }
+
+  private byte[] read(long position, int length) {
+    byte[] bytes = new byte[length];
+    int offset = (int) (position % buffer.capacity());
+    int first = Math.min(length, buffer.capacity() - offset);
+    buffer.get(offset, bytes, 0, first);
+    buffer.get(0, bytes, first, length - first);
+    return bytes;
+  }
+}
@@ -0,0 +1,20 @@
+package com.hivemq.httpmqttbridge.subscribe.request;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Builder;
+
+/**
+ * Topic filter of a pull session, an optional content filter expression as accepted by the
+ * {@code filter} parameter of the SSE endpoint, and an optional share group.
+ */
+@Builder
+public record PollSessionRequest(
+    @NotBlank(message = "Topic is required")
+    String topic,
+
+    String filter,
+
+    String group
+) {
+
+}
@@ -0,0 +1,19 @@
+package com.hivemq.httpmqttbridge.subscribe.request;
+
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilter;
+import java.time.Duration;
+import lombok.Builder;
+
+/**
+ * Per-stream options of a subscription request. Absent values fall back to the configured
+ * defaults; {@code lastEventId} resumes after that event and {@code flushWindow} of zero writes
+ * every message as soon as it arrives. Only messages matching {@code filter} are sent, and a
+ * {@code conflate} interval sends only the newest message per topic once per interval. With a
+ * share {@code group} the stream receives its share of a {@code $share/<group>/} subscription.
+ */
+@Builder
+public record SseStreamOptions(Long lastEventId, Duration flushWindow, MessageFilter filter,
+                               Duration conflate, String group) {
+
+  public static final SseStreamOptions DEFAULTS = SseStreamOptions.builder().build();
+}
@@ -0,0 +1,30 @@
+package com.hivemq.httpmqttbridge.subscribe.request;
+
+/**
+ * One topic filter of a multi-topic stream, written as {@code <brokerId>:<topicFilter>}.
+ */
+public record TopicSubscription(Long brokerId, String topicFilter) {
+
+  /**
+   * Parses {@code <brokerId>:<topicFilter>}, for example {@code 1:sensors/#}.
+   *
+   * @throws IllegalArgumentException if the value is not in that form
+   */
+  public static TopicSubscription parse(String value) {
+    int separator = value.indexOf(':');
+    if (separator <= 0 || separator == value.length() - 1) {
+      throw new IllegalArgumentException("Expected <brokerId>:<topicFilter> but got " + value);
+    }
+    try {
+      return new TopicSubscription(Long.valueOf(value.substring(0, separator).trim()),
+          value.substring(separator + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid broker id in " + value);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return brokerId + ":" + topicFilter;
+  }
+}
@@ -0,0 +1,9 @@
+package com.hivemq.httpmqttbridge.subscribe.response;
+
+import lombok.Builder;
+
+@Builder
+public record PollSessionResponse(String id, Long brokerId, String topic, String group,
+                                  String filter, int bufferCapacity, long idleTimeoutMs) {
+
+}
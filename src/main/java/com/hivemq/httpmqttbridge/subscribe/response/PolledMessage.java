@@ -0,0 +1,9 @@
+package com.hivemq.httpmqttbridge.subscribe.response;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Builder;
+
+@Builder
+public record PolledMessage(long id, String topic, JsonNode payload) {
+
+}
@@ -0,0 +1,10 @@
+package com.hivemq.httpmqttbridge.subscribe.response;
+
+import com.hivemq.httpmqttbridge.subscribe.stream.OverflowPolicy;
+import lombok.Builder;
+
+@Builder
+public record SseStreamStats(String id, Long brokerId, String topic, OverflowPolicy overflowPolicy,
+                             int queueDepth, int queueCapacity, long sent, long dropped) {
+
+}
@@ -2,22 +2,30 @@ package com.hivemq.httpmqttbridge.subscribe.service;
 
 import static com.hivemq.httpmqttbridge.subscribe.MqttSubscriptionErrorHandler.sendSseError;
 
-import com.hivemq.client.mqtt.datatypes.MqttQos;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
-import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
-import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5RetainHandling;
-import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAck;
 import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
-import java.nio.charset.StandardCharsets;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilter;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilterRegistry;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.registry.SubscriptionRegistry;
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
+import com.hivemq.httpmqttbridge.subscribe.request.TopicSubscription;
+import com.hivemq.httpmqttbridge.subscribe.stream.HeartbeatWheel;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseFrameEncoder;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStream;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStreamRegistry;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Service
@@ -25,35 +33,44 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 @Slf4j
 public class HiveMqttSubscriptionService implements MqttSubscriptionService {
 
-  private static final ScheduledExecutorService HEARTBEAT_SCHEDULER = Executors.newScheduledThreadPool(
-      1);
   private final MqttBrokerClientProvider<Mqtt5AsyncClient> clientProvider;
   private final SseEmitterHandler sseEmitterHandler;
-  @Value("${mqtt.subscription.sse.heartbeat-interval-ms:10000}")
-  private long heartbeatMs;
-  @Value("${mqtt.subscription.mqtt.timeout-ms:5000}")
-  private long subscribeTimeoutMs;
+  private final SseFrameEncoder sseFrameEncoder;
+  private final SubscriptionRegistry subscriptionRegistry;
+  private final SseStreamRegistry sseStreamRegistry;
+  private final HeartbeatWheel heartbeatWheel;
+  private final MessageFilterRegistry messageFilterRegistry;
 
 
-  private static void processMessage(Long brokerId, SseEmitter emitter, Mqtt5Publish pub) {
-    pub.getPayload().ifPresent(buf -> {
-      try {
-        byte[] bytes = new byte[buf.remaining()];
-        buf.get(bytes);
-        String text = new String(bytes, StandardCharsets.UTF_8);
-        emitter.send(SseEmitter.event().name("message")
-            .data(text, MediaType.APPLICATION_JSON));
-      } catch (Exception sendEx) {
-        log.error("Error sending SSE message for broker {}", brokerId, sendEx);
-        sendSseError(emitter, "SEND", "Failed to send SSE message: " + sendEx.getMessage(), sendEx);
+  private void processMessages(Long brokerId, SseEmitter emitter,
+      Function<InboundMessage, Set<DataWithMediaType>> encoder, List<InboundMessage> messages) {
+    Set<DataWithMediaType> frames = new LinkedHashSet<>();
+    for (InboundMessage message : messages) {
+      if (message.publish().getPayload().isPresent()) {
+        frames.addAll(encoder.apply(message));
       }
-    });
+    }
+    if (frames.isEmpty()) {
+      return;
+    }
+    try {
+      // One send call writes all frames and flushes once
+      emitter.send(frames);
+    } catch (Exception sendEx) {
+      log.error("Error sending SSE message for broker {}", brokerId, sendEx);
+      sendSseError(emitter, "SEND", "Failed to send SSE message: " + sendEx.getMessage(), sendEx);
+    }
   }
 
   @Override
   public void stream(Long brokerId, String topic, SseEmitter emitter) {
+    stream(brokerId, topic, emitter, SseStreamOptions.DEFAULTS);
+  }
+
+  @Override
+  public void stream(Long brokerId, String topic, SseEmitter emitter, SseStreamOptions options) {
     log.debug("Streaming on broker id - {} topic - {}", brokerId, topic);
-    clientProvider.getClient(brokerId).handle((client, ex) -> {
+    getClient(brokerId, options.group()).handle((client, ex) -> {
       if (ex != null) {
         log.error("MQTT client acquisition failed for broker - {} , exception - {}", brokerId,
             ex.getMessage());
@@ -61,45 +78,117 @@ public class HiveMqttSubscriptionService implements MqttSubscriptionService {
         emitter.completeWithError(ex);
         return null;
       }
-      subscribeAndStream(brokerId, topic, emitter, client);
+      subscribeAndStream(brokerId, topic, emitter, client, options);
       return null;
     });
   }
 
+  @Override
+  public void stream(List<TopicSubscription> topics, SseEmitter emitter,
+      SseStreamOptions options) {
+    String label = topics.stream().map(TopicSubscription::toString)
+        .collect(Collectors.joining(","));
+    log.debug("Streaming multiplexed topics - {}", label);
+    String group = options.group();
+    // One queue, writer and heartbeat for all filters; each filter still shares its subscription
+    Set<Long> brokerIds = topics.stream().map(TopicSubscription::brokerId)
+        .collect(Collectors.toSet());
+    SseStream stream = sseStreamRegistry.open(brokerIds, label, emitter, options,
+        matcher(options.filter()),
+        messages -> processMessages(null, emitter, sseFrameEncoder::encodeTagged, messages));
+    List<TopicSubscription> attached = new CopyOnWriteArrayList<>();
+    sseEmitterHandler.setupEmitterLifecycle(emitter, null, label, () -> {
+      attached.forEach(topic -> subscriptionRegistry.detach(topic.brokerId(), group,
+          topic.topicFilter(), stream));
+      sseStreamRegistry.close(stream);
+    });
+
+    List<TopicSubscription> active = new CopyOnWriteArrayList<>();
+    CompletableFuture<?>[] subscriptions = topics.stream().map(topic ->
+        getClient(topic.brokerId(), group).thenCompose(client -> {
+          attached.add(topic);
+          var subscription = subscriptionRegistry.attach(topic.brokerId(), group, client,
+              topic.topicFilter(), stream, null);
+          if (stream.isClosed()) {
+            // The emitter finished while the client was being acquired
+            subscriptionRegistry.detach(topic.brokerId(), group, topic.topicFilter(), stream);
+          }
+          return subscription;
+        }).handle((ok, ex) -> {
+          if (ex == null) {
+            active.add(topic);
+            return null;
+          }
+          // The other filters keep streaming
+          log.error("Subscribe failed for {} on multiplexed stream", topic, ex);
+          subscriptionRegistry.detach(topic.brokerId(), group, topic.topicFilter(), stream);
+          sendSseError(emitter, "SUBSCRIBE",
+              "Subscribe to " + topic + " failed: " + ex.getMessage(), ex);
+          return null;
+        })).toArray(CompletableFuture[]::new);
+
+    CompletableFuture.allOf(subscriptions).thenRun(() -> {
+      if (stream.isClosed()) {
+        return;
+      }
+      if (active.isEmpty()) {
+        emitter.complete();
+        return;
+      }
+      try {
+        emitter.send(SseEmitter.event().name("subscribed").data("listening on " + active.stream()
+            .map(TopicSubscription::toString).collect(Collectors.joining(","))));
+      } catch (Exception sendEx) {
+        log.error("Failed to send 'subscribed' event", sendEx);
+      }
+    });
+    heartbeatWheel.register(stream);
+  }
+
+  // The stream checks the filter before queueing, so filtered out messages never take a slot
+  private Predicate<InboundMessage> matcher(MessageFilter filter) {
+    return filter == null ? null : message -> messageFilterRegistry.matches(filter, message);
+  }
+
+  private CompletableFuture<Mqtt5AsyncClient> getClient(Long brokerId, String group) {
+    // Each share group subscribes through its own connection
+    return group == null ? clientProvider.getClient(brokerId)
+        : clientProvider.getSharedSubscriptionClient(brokerId, group);
+  }
+
   private void subscribeAndStream(Long brokerId, String topic, SseEmitter emitter,
-      Mqtt5AsyncClient client) {
-    var subscription = client.subscribeWith().topicFilter(topic).qos(MqttQos.AT_LEAST_ONCE)
-        .retainHandling(Mqtt5RetainHandling.SEND)
-        .callback(pub -> processMessage(brokerId, emitter, pub)).send()
-        .orTimeout(subscribeTimeoutMs, TimeUnit.MILLISECONDS);
-
-    setupEmitterLifecycle(emitter, brokerId, topic, client);
-    handleSubscriptionResult(subscription, emitter, brokerId, topic, client);
-    startHeartbeat(emitter);
+      Mqtt5AsyncClient client, SseStreamOptions options) {
+    // Streams on the same filter share one broker subscription; the MQTT callback only enqueues
+    SseStream stream = sseStreamRegistry.open(brokerId, topic, emitter, options,
+        matcher(options.filter()),
+        messages -> processMessages(brokerId, emitter, sseFrameEncoder::encode, messages));
+    String group = options.group();
+    var subscription = subscriptionRegistry.attach(brokerId, group, client, topic, stream,
+        options.lastEventId());
+
+    setupEmitterLifecycle(emitter, brokerId, group, topic, stream);
+    handleSubscriptionResult(subscription, emitter, brokerId, group, topic, stream);
+    heartbeatWheel.register(stream);
   }
 
-  private void setupEmitterLifecycle(SseEmitter emitter, Long brokerId, String topic,
-      Mqtt5AsyncClient client) {
+  private void setupEmitterLifecycle(SseEmitter emitter, Long brokerId, String group,
+      String topic, SseStream stream) {
     Runnable unsubscribe = () -> {
-      try {
-        client.unsubscribeWith().topicFilter(topic).send().orTimeout(2000, TimeUnit.MILLISECONDS)
-            .join();
-      } catch (Exception exception) {
-        log.error("Error unsubscribing from topic - {}", topic, exception);
-      }
+      subscriptionRegistry.detach(brokerId, group, topic, stream);
+      sseStreamRegistry.close(stream);
     };
     sseEmitterHandler.setupEmitterLifecycle(emitter, brokerId, topic, unsubscribe);
   }
 
-  private void handleSubscriptionResult(CompletableFuture<Mqtt5SubAck> subscription,
-      SseEmitter emitter, Long brokerId, String topic, Mqtt5AsyncClient client) {
+  private void handleSubscriptionResult(CompletableFuture<Void> subscription,
+      SseEmitter emitter, Long brokerId, String group, String topic, SseStream stream) {
 
     subscription.whenComplete((ok, subscriptionException) -> {
       if (subscriptionException != null) {
         log.error("Subscribe failed brokerId={} topic={}", brokerId, topic, subscriptionException);
         sendSseError(emitter, "SUBSCRIBE",
             "Subscribe failed: " + subscriptionException.getMessage(), subscriptionException);
-        unsubscribe(client, topic);
+        subscriptionRegistry.detach(brokerId, group, topic, stream);
         return;
       }
       try {
@@ -108,31 +197,8 @@ public class HiveMqttSubscriptionService implements MqttSubscriptionService {
         log.error("Failed to send 'subscribed' event", sendEx);
         sendSseError(emitter, "SEND_SUB", "Failed to send subscribed event: " + sendEx.getMessage(),
             sendEx);
-        unsubscribe(client, topic);
+        subscriptionRegistry.detach(brokerId, group, topic, stream);
       }
     });
   }
-
-  private void unsubscribe(Mqtt5AsyncClient client, String topic) {
-    try {
-      client.unsubscribeWith().topicFilter(topic).send().orTimeout(2000, TimeUnit.MILLISECONDS)
-          .join();
-    } catch (Exception exception) {
-      log.error("Failed to unsubscribe {} topic", topic, exception);
-    }
-  }
-
-  private void startHeartbeat(SseEmitter emitter) {
-    var sseHeartBeatFuture = HEARTBEAT_SCHEDULER.scheduleAtFixedRate(() -> {
-      try {
-        emitter.send(SseEmitter.event().comment("keep-alive"));
-      } catch (Exception ex) {
-        sendSseError(emitter, "HEARTBEAT", "Heartbeat failed: " + ex.getMessage(), ex);
-        emitter.completeWithError(ex);
-      }
-    }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
-
-    emitter.onCompletion(() -> sseHeartBeatFuture.cancel(true));
-    emitter.onTimeout(() -> sseHeartBeatFuture.cancel(true));
-  }
 }
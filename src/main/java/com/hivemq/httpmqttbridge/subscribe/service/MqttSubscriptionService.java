@@ -1,9 +1,23 @@
 package com.hivemq.httpmqttbridge.subscribe.service;
 
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
+import com.hivemq.httpmqttbridge.subscribe.request.TopicSubscription;
+import java.util.List;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 public interface MqttSubscriptionService {
 
   void stream(Long brokerId, String topic, SseEmitter emitter);
 
+  /**
+   * Streams the topic with per-stream options such as a {@code Last-Event-ID} to resume after.
+   */
+  void stream(Long brokerId, String topic, SseEmitter emitter, SseStreamOptions options);
+
+  /**
+   * Multiplexes several topic filters, possibly of different brokers, into one stream whose
+   * events name the broker and concrete topic of each message.
+   */
+  void stream(List<TopicSubscription> topics, SseEmitter emitter, SseStreamOptions options);
+
 }
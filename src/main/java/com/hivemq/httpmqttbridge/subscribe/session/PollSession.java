@@ -0,0 +1,211 @@
+package com.hivemq.httpmqttbridge.subscribe.session;
+
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.registry.MessageListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Bounded message buffer of a pull session. {@link #onMessage} only appends the messages accepted
+ * by the session matcher, dropping the oldest message when the buffer is full. The matcher runs
+ * before the buffer is locked, so rejected messages are neither retained nor buffered.
+ *
+ * <p>A poll takes the buffered messages at once or, when nothing is buffered, parks until a
+ * message arrives or the wait time has passed. Only one poll waits at a time; a newer poll answers
+ * the older one with an empty batch.
+ *
+ * <p>Messages stay retained until the client acknowledges them with a later poll, so manual
+ * acknowledgement holds back the broker's PUBACK until the client has the message. A poll with
+ * {@code ack} acknowledges the messages up to that id and delivers the later ones again; a poll
+ * without it acknowledges every message taken so far. Closing the session releases the rest.
+ */
+public final class PollSession implements MessageListener {
+
+  private final String id;
+  private final Long brokerId;
+  private final String group;
+  private final String topic;
+  private final Predicate<InboundMessage> matcher;
+  private final int capacity;
+  private final ArrayDeque<InboundMessage> buffer = new ArrayDeque<>();
+  // Taken by a poll but not yet acknowledged, oldest first
+  private final ArrayDeque<InboundMessage> delivered = new ArrayDeque<>();
+  private CompletableFuture<List<InboundMessage>> waiter;
+  private int waiterMax;
+  private long dropped;
+  private boolean closed;
+  private volatile long lastAccessNanos = System.nanoTime();
+
+  /**
+   * @param matcher messages the session buffers, or null for every message of the topic
+   */
+  public PollSession(String id, Long brokerId, String group, String topic,
+      Predicate<InboundMessage> matcher, int capacity) {
+    this.id = id;
+    this.brokerId = brokerId;
+    this.group = group;
+    this.topic = topic;
+    this.matcher = matcher != null ? matcher : message -> true;
+    this.capacity = Math.max(1, capacity);
+  }
+
+  @Override
+  public void onMessage(InboundMessage message) {
+    CompletableFuture<List<InboundMessage>> ready;
+    List<InboundMessage> batch;
+    if (!matcher.test(message)) {
+      return;
+    }
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (buffer.size() >= capacity) {
+        buffer.pollFirst().release();
+        dropped++;
+      }
+      message.retain();
+      buffer.addLast(message);
+      if (waiter == null) {
+        return;
+      }
+      batch = take(waiterMax);
+      ready = waiter;
+      waiter = null;
+    }
+    // Completing only dispatches the parked request back to the servlet container
+    ready.complete(batch);
+  }
+
+  /**
+   * Acknowledges every message taken so far and takes up to {@code max} buffered messages,
+   * waiting up to {@code waitMs} when none are buffered.
+   */
+  public CompletableFuture<List<InboundMessage>> poll(int max, long waitMs) {
+    return poll(max, waitMs, null);
+  }
+
+  /**
+   * Like {@link #poll(int, long)}, but acknowledges only the taken messages with an id up to
+   * {@code ack}; the later ones are delivered again first. A null {@code ack} acknowledges all.
+   */
+  public CompletableFuture<List<InboundMessage>> poll(int max, long waitMs, Long ack) {
+    lastAccessNanos = System.nanoTime();
+    CompletableFuture<List<InboundMessage>> superseded;
+    CompletableFuture<List<InboundMessage>> parked;
+    synchronized (this) {
+      acknowledge(ack);
+      List<InboundMessage> batch = take(max);
+      if (!batch.isEmpty() || waitMs <= 0 || closed) {
+        return CompletableFuture.completedFuture(batch);
+      }
+      superseded = waiter;
+      parked = new CompletableFuture<>();
+      waiter = parked;
+      waiterMax = max;
+    }
+    if (superseded != null) {
+      superseded.complete(List.of());
+    }
+    parked.whenComplete((batch, ex) -> {
+      synchronized (this) {
+        if (waiter == parked) {
+          waiter = null;
+        }
+      }
+      lastAccessNanos = System.nanoTime();
+    });
+    return parked.completeOnTimeout(List.of(), waitMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Discards the buffered and unacknowledged messages and answers a waiting poll with an empty
+   * batch.
+   */
+  public void close() {
+    CompletableFuture<List<InboundMessage>> parked;
+    synchronized (this) {
+      closed = true;
+      buffer.forEach(InboundMessage::release);
+      buffer.clear();
+      delivered.forEach(InboundMessage::release);
+      delivered.clear();
+      parked = waiter;
+      waiter = null;
+    }
+    if (parked != null) {
+      parked.complete(List.of());
+    }
+  }
+
+  /**
+   * Whether no poll has been made or waited for {@code idleTimeoutMs}.
+   */
+  public synchronized boolean isIdle(long nowNanos, long idleTimeoutMs) {
+    return waiter == null
+        && nowNanos - lastAccessNanos > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+  }
+
+  public String id() {
+    return id;
+  }
+
+  public Long brokerId() {
+    return brokerId;
+  }
+
+  /**
+   * Share group of the subscription, or null for a plain subscription.
+   */
+  public String group() {
+    return group;
+  }
+
+  public String topic() {
+    return topic;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public synchronized int buffered() {
+    return buffer.size();
+  }
+
+  public synchronized long dropped() {
+    return dropped;
+  }
+
+  /**
+   * Number of taken messages that are not acknowledged yet.
+   */
+  public synchronized int unacknowledged() {
+    return delivered.size();
+  }
+
+  private List<InboundMessage> take(int max) {
+    List<InboundMessage> batch = new ArrayList<>(Math.min(max, buffer.size()));
+    while (batch.size() < max && !buffer.isEmpty()) {
+      InboundMessage message = buffer.pollFirst();
+      delivered.addLast(message);
+      batch.add(message);
+    }
+    return batch;
+  }
+
+  private void acknowledge(Long ack) {
+    // From the newest, so redelivered messages go back to the front in their order
+    for (InboundMessage message; (message = delivered.pollLast()) != null; ) {
+      if (ack != null && message.id() > ack) {
+        buffer.addFirst(message);
+      } else {
+        message.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package com.hivemq.httpmqttbridge.subscribe.session;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.exception.PollSessionLimitException;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilter;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilterRegistry;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.registry.SubscriptionRegistry;
+import com.hivemq.httpmqttbridge.subscribe.response.PolledMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates, tracks and expires {@link PollSession}s. Every session attaches to the shared
+ * subscription of its filter like an SSE stream does; sessions that are not polled for
+ * {@code idle-timeout-ms} are detached and removed. At most {@code max-sessions} sessions exist
+ * at a time. The sessions of an evicted broker are removed: a waiting poll returns an empty
+ * batch and the next one finds no session, so the client creates a new one.
+ */
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PollSessionRegistry {
+
+  private final MqttBrokerClientProvider<Mqtt5AsyncClient> clientProvider;
+
+  private final SubscriptionRegistry subscriptionRegistry;
+
+  private final MessageFilterRegistry messageFilterRegistry;
+
+  private final PayloadCompressor payloadCompressor;
+
+  private final ConcurrentMap<String, PollSession> sessions = new ConcurrentHashMap<>();
+
+  // Counts sessions from the moment they are admitted, before their client is connected
+  private final AtomicInteger sessionCount = new AtomicInteger();
+
+  @Value("${mqtt.subscription.session.buffer-capacity:10000}")
+  private int bufferCapacity;
+
+  @Value("${mqtt.subscription.session.idle-timeout-ms:60000}")
+  private long idleTimeoutMs;
+
+  @Value("${mqtt.subscription.session.max-wait-ms:30000}")
+  private long maxWaitMs;
+
+  @Value("${mqtt.subscription.session.max-batch:1000}")
+  private int maxBatch;
+
+  @Value("${mqtt.subscription.session.max-sessions:1000}")
+  private int maxSessions;
+
+  private ScheduledExecutorService reaper;
+
+  @PostConstruct
+  void start() {
+    reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mqtt-session-reaper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long periodMs = Math.max(1000, idleTimeoutMs / 4);
+    reaper.scheduleAtFixedRate(this::expireIdle, periodMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    reaper.shutdownNow();
+    sessions.values().forEach(this::remove);
+  }
+
+  /**
+   * Creates a session buffering the messages of the filter, within the share group if one is
+   * given. The returned future completes once the subscription is active, or fails with a
+   * {@link PollSessionLimitException} when {@code max-sessions} sessions already exist.
+   */
+  public CompletableFuture<PollSession> create(Long brokerId, String topic, String group,
+      MessageFilter filter) {
+    if (sessionCount.incrementAndGet() > maxSessions) {
+      sessionCount.decrementAndGet();
+      return CompletableFuture.failedFuture(new PollSessionLimitException(maxSessions));
+    }
+    var clientFuture = group == null ? clientProvider.getClient(brokerId)
+        : clientProvider.getSharedSubscriptionClient(brokerId, group);
+    return clientFuture.whenComplete((client, ex) -> {
+      if (ex != null) {
+        sessionCount.decrementAndGet();
+      }
+    }).thenCompose(client -> {
+      PollSession session = new PollSession(UUID.randomUUID().toString(), brokerId, group, topic,
+          filter == null ? null : message -> messageFilterRegistry.matches(filter, message),
+          bufferCapacity);
+      sessions.put(session.id(), session);
+      return subscriptionRegistry.attach(brokerId, group, client, topic, session, null)
+          .handle((ok, ex) -> {
+            if (ex != null) {
+              log.error("Subscribe failed for session {} brokerId={} topic={}", session.id(),
+                  brokerId, topic, ex);
+              remove(session);
+              throw new IllegalStateException("Subscribe failed: " + ex.getMessage(), ex);
+            }
+            log.debug("Created poll session {} on broker {} topic {}", session.id(), brokerId,
+                topic);
+            return session;
+          });
+    });
+  }
+
+  public Optional<PollSession> find(Long brokerId, String sessionId) {
+    return Optional.ofNullable(sessions.get(sessionId))
+        .filter(session -> session.brokerId().equals(brokerId));
+  }
+
+  /**
+   * Acknowledges the messages of earlier polls up to {@code ack}, or all of them when it is null,
+   * and takes up to {@code max} messages of the session, waiting up to {@code waitMs} for the first
+   * one. Both are capped by the configured limits.
+   */
+  public CompletableFuture<List<PolledMessage>> poll(PollSession session, int max, long waitMs,
+      Long ack) {
+    return session.poll(Math.max(1, Math.min(max, maxBatch)), Math.min(waitMs, maxWaitMs), ack)
+        .thenApply(batch -> batch.stream().map(this::toPolledMessage).toList());
+  }
+
+  public void delete(PollSession session) {
+    remove(session);
+    log.debug("Deleted poll session {}", session.id());
+  }
+
+  @EventListener
+  void onBrokerEvicted(MqttBrokerEvictedEvent event) {
+    for (PollSession session : sessions.values()) {
+      if (session.brokerId().equals(event.brokerId())) {
+        log.debug("Removing poll session {} of evicted broker {}", session.id(),
+            event.brokerId());
+        remove(session);
+      }
+    }
+  }
+
+  public int bufferCapacity() {
+    return bufferCapacity;
+  }
+
+  public long idleTimeoutMs() {
+    return idleTimeoutMs;
+  }
+
+  /**
+   * JSON payloads are embedded as JSON, anything else as a string.
+   */
+  private PolledMessage toPolledMessage(InboundMessage message) {
+    JsonNode payload = messageFilterRegistry.json(message);
+    if (payload.isMissingNode()) {
+      payload = TextNode.valueOf(new String(payloadCompressor.decode(message.publish(),
+          message.publish().getPayloadAsBytes()), StandardCharsets.UTF_8));
+    }
+    return PolledMessage.builder().id(message.id()).topic(message.publish().getTopic().toString())
+        .payload(payload).build();
+  }
+
+  void expireIdle() {
+    long now = System.nanoTime();
+    for (PollSession session : sessions.values()) {
+      if (session.isIdle(now, idleTimeoutMs)) {
+        log.debug("Expiring idle poll session {}", session.id());
+        remove(session);
+      }
+    }
+  }
+
+  private void remove(PollSession session) {
+    if (sessions.remove(session.id(), session)) {
+      sessionCount.decrementAndGet();
+      session.close();
+      subscriptionRegistry.detach(session.brokerId(), session.group(), session.topic(), session);
+    }
+  }
+}
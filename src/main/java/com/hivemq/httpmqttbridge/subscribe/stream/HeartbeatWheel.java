@@ -0,0 +1,105 @@
+package com.hivemq.httpmqttbridge.subscribe.stream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hashed timer wheel that sends SSE keep-alives for all streams from one thread. Each stream sits
+ * in the slot of its next deadline; when the wheel reaches that slot it either requests a
+ * heartbeat, if the stream has been idle for the whole interval, or moves the stream to the slot
+ * an interval after its last write. A tick only touches the streams that are due, and streams
+ * that are sending data never get a heartbeat.
+ */
+
+@Component
+@Slf4j
+public class HeartbeatWheel {
+
+  private final Queue<SseStream> registrations = new ConcurrentLinkedQueue<>();
+
+  @Value("${mqtt.subscription.sse.heartbeat-interval-ms:15000}")
+  private long heartbeatMs;
+
+  @Value("${mqtt.subscription.sse.heartbeat-wheel-slots:64}")
+  private int slotCount;
+
+  // Only touched by the ticker thread
+  private ArrayDeque<SseStream>[] slots;
+  private int cursor;
+  private long intervalNanos;
+  private long tickNanos;
+
+  private ScheduledExecutorService ticker;
+
+  @PostConstruct
+  @SuppressWarnings("unchecked")
+  void start() {
+    slots = new ArrayDeque[Math.max(1, slotCount)];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new ArrayDeque<>();
+    }
+    long tickMs = Math.max(1, heartbeatMs / slots.length);
+    tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+    intervalNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMs);
+    ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mqtt-sse-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    ticker.shutdownNow();
+  }
+
+  /**
+   * Adds the stream to the wheel. Closed streams are dropped when their slot comes up.
+   */
+  public void register(SseStream stream) {
+    registrations.add(stream);
+  }
+
+  void tick() {
+    try {
+      SseStream registered;
+      while ((registered = registrations.poll()) != null) {
+        schedule(registered, intervalNanos);
+      }
+      long now = System.nanoTime();
+      ArrayDeque<SseStream> due = slots[cursor];
+      // Streams rescheduled a full rotation ahead land in this slot again; leave them there
+      for (int remaining = due.size(); remaining > 0; remaining--) {
+        SseStream stream = due.pollFirst();
+        if (stream.isClosed()) {
+          continue;
+        }
+        long idle = now - stream.lastWriteNanos();
+        if (idle >= intervalNanos - tickNanos) {
+          stream.requestHeartbeat();
+          schedule(stream, intervalNanos);
+        } else {
+          schedule(stream, intervalNanos - idle);
+        }
+      }
+      cursor = (cursor + 1) % slots.length;
+    } catch (RuntimeException e) {
+      log.error("Heartbeat tick failed", e);
+    }
+  }
+
+  private void schedule(SseStream stream, long delayNanos) {
+    long ticks = Math.min(slots.length, Math.max(1, (delayNanos + tickNanos - 1) / tickNanos));
+    slots[(int) ((cursor + ticks) % slots.length)].addLast(stream);
+  }
+}
@@ -0,0 +1,30 @@
+package com.hivemq.httpmqttbridge.subscribe.stream;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.util.Locale;
+
+/**
+ * What a stream does with a new message when its send queue is full.
+ */
+public enum OverflowPolicy {
+  /** Discard the oldest queued message. */
+  DROP_OLDEST,
+  /** Discard the new message. */
+  DROP_NEWEST,
+  /** Replace the queued message of the same topic, otherwise discard the oldest. */
+  CONFLATE_BY_TOPIC,
+  /** Close the stream. */
+  DISCONNECT;
+
+  /**
+   * Parses names such as {@code drop-oldest} or {@code DROP_OLDEST}.
+   */
+  public static OverflowPolicy fromName(String name) {
+    return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+  }
+
+  @JsonValue
+  public String toName() {
+    return name().toLowerCase(Locale.ROOT).replace('_', '-');
+  }
+}
@@ -0,0 +1,109 @@
+package com.hivemq.httpmqttbridge.subscribe.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+
+/**
+ * Builds the complete {@code id:/event:/data:} wire frame of a message as UTF-8 bytes. The frame
+ * is cached on the {@link InboundMessage}, so every stream the message fans out to writes the
+ * same buffer without another copy or message converter pass.
+ *
+ * <p>Streams that multiplex several topics use the tagged frame, whose data is the envelope
+ * {@code {"brokerId":1,"topic":"sensors/a","payload":...}}. JSON payloads are embedded as they
+ * are, anything else as a JSON string.
+ */
+
+@Component
+@RequiredArgsConstructor
+public class SseFrameEncoder {
+
+  private static final byte[] DATA_FIELD = "data:".getBytes(StandardCharsets.UTF_8);
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final PayloadCompressor payloadCompressor;
+
+  public Set<DataWithMediaType> encode(InboundMessage message) {
+    return message.sseFrame(this::buildFrame);
+  }
+
+  /**
+   * Encodes the message as a frame that also names its broker and topic.
+   */
+  public Set<DataWithMediaType> encodeTagged(InboundMessage message) {
+    return message.taggedSseFrame(this::buildTaggedFrame);
+  }
+
+  private Set<DataWithMediaType> buildFrame(InboundMessage message) {
+    return frame(message.id(), payloadCompressor.decode(message.publish(),
+        message.publish().getPayloadAsBytes()));
+  }
+
+  private Set<DataWithMediaType> buildTaggedFrame(InboundMessage message) {
+    byte[] payload = payloadCompressor.decode(message.publish(),
+        message.publish().getPayloadAsBytes());
+    JsonStringEncoder quoter = JsonStringEncoder.getInstance();
+    ByteArrayOutputStream envelope = new ByteArrayOutputStream(payload.length + 96);
+    envelope.writeBytes(("{\"brokerId\":" + message.brokerId() + ",\"topic\":\"")
+        .getBytes(StandardCharsets.UTF_8));
+    envelope.writeBytes(quoter.quoteAsUTF8(message.publish().getTopic().toString()));
+    envelope.writeBytes("\",\"payload\":".getBytes(StandardCharsets.UTF_8));
+    if (isJson(payload)) {
+      envelope.writeBytes(payload);
+    } else {
+      envelope.write('"');
+      envelope.writeBytes(quoter.quoteAsUTF8(new String(payload, StandardCharsets.UTF_8)));
+      envelope.write('"');
+    }
+    envelope.write('}');
+    return frame(message.id(), envelope.toByteArray());
+  }
+
+  private static Set<DataWithMediaType> frame(long id, byte[] payload) {
+    ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 64);
+    frame.writeBytes(("id:" + id + "\nevent:message\n").getBytes(StandardCharsets.UTF_8));
+    // Every payload line needs its own data field. SSE ends a line at CRLF, LF or a lone CR, so
+    // all three must start a new data field or the payload could inject id: or event: fields
+    int lineStart = 0;
+    for (int i = 0; i <= payload.length; i++) {
+      if (i < payload.length && payload[i] != '\n' && payload[i] != '\r') {
+        continue;
+      }
+      frame.writeBytes(DATA_FIELD);
+      frame.write(payload, lineStart, i - lineStart);
+      frame.write('\n');
+      if (i + 1 < payload.length && payload[i] == '\r' && payload[i + 1] == '\n') {
+        i++;
+      }
+      lineStart = i + 1;
+    }
+    frame.write('\n');
+    return Set.of(new DataWithMediaType(frame.toByteArray(), MediaType.TEXT_PLAIN));
+  }
+
+  /**
+   * Whether the payload is exactly one well-formed JSON value.
+   */
+  private static boolean isJson(byte[] payload) {
+    try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+      if (parser.nextToken() == null) {
+        return false;
+      }
+      parser.skipChildren();
+      return parser.nextToken() == null;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,426 @@
+package com.hivemq.httpmqttbridge.subscribe.stream;
+
+import static com.hivemq.httpmqttbridge.subscribe.MqttSubscriptionErrorHandler.sendSseError;
+
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.registry.MessageListener;
+import com.hivemq.httpmqttbridge.subscribe.response.SseStreamStats;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Bounded send queue between the MQTT callback and one {@link SseEmitter}. {@link #onMessage}
+ * only enqueues, so it never blocks the client thread that delivers messages for every other
+ * stream; a writer task on the shared executor drains the queue into the emitter. At most one
+ * writer task runs per stream, which keeps the message order.
+ *
+ * <p>With a flush window the writer is started only once the window has passed since the first
+ * queued message or {@code flushMaxBytes} are queued, and everything queued is written in one
+ * batch with a single flush.
+ *
+ * <p>In conflation mode only the newest message of each concrete topic of each broker is kept,
+ * and a snapshot of those is written at most once per {@code conflateMs}. Superseded messages
+ * count as dropped.
+ *
+ * <p>Messages the stream's {@code matcher} rejects are dropped before they are queued, so they
+ * take no queue slot, do not push out matching messages and are never retained.
+ *
+ * <p>Every queued message is retained until it has been written or dropped, which is what lets
+ * manual acknowledgement hold back the broker's PUBACK until the client has the message.
+ *
+ * <p>A resume whose replay is incomplete is announced with a {@code gap} event carrying the id of
+ * the newest message the replay misses.
+ */
+@Slf4j
+public final class SseStream implements MessageListener {
+
+  private static final long NO_GAP = Long.MIN_VALUE;
+
+  private final String id;
+  private final Long brokerId;
+  private final Set<Long> brokerIds;
+  private final String topic;
+  private final SseEmitter emitter;
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final Executor writer;
+  private final SseWriter sink;
+  private final long flushWindowMs;
+  private final int flushMaxBytes;
+  private final ScheduledExecutorService flushScheduler;
+  private final long conflateMs;
+  private final Predicate<InboundMessage> matcher;
+  private final ArrayDeque<InboundMessage> queue = new ArrayDeque<>();
+  private final LinkedHashMap<TopicKey, InboundMessage> latest = new LinkedHashMap<>();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final AtomicBoolean flushPending = new AtomicBoolean();
+  private long queuedBytes;
+  private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+  private final AtomicLong replayGap = new AtomicLong(NO_GAP);
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean closed;
+  private volatile long lastWriteNanos = System.nanoTime();
+
+  @Builder
+  private SseStream(String id, Long brokerId, Set<Long> brokerIds, String topic,
+      SseEmitter emitter, int capacity, OverflowPolicy overflowPolicy, Executor writer,
+      SseWriter sink, long flushWindowMs, int flushMaxBytes,
+      ScheduledExecutorService flushScheduler, long conflateMs,
+      Predicate<InboundMessage> matcher) {
+    this.id = id;
+    this.brokerId = brokerId;
+    // A multiplexed stream has no single broker id but receives from every broker it lists
+    this.brokerIds = brokerIds != null ? Set.copyOf(brokerIds)
+        : brokerId != null ? Set.of(brokerId) : Set.of();
+    this.topic = topic;
+    this.emitter = emitter;
+    this.capacity = Math.max(1, capacity);
+    this.overflowPolicy = overflowPolicy;
+    this.writer = writer;
+    this.sink = sink;
+    this.flushWindowMs = flushScheduler != null ? flushWindowMs : 0;
+    this.flushMaxBytes = flushMaxBytes;
+    this.flushScheduler = flushScheduler;
+    this.conflateMs = flushScheduler != null ? conflateMs : 0;
+    this.matcher = matcher != null ? matcher : message -> true;
+  }
+
+  @Override
+  public void onMessage(InboundMessage message) {
+    if (closed || !matcher.test(message)) {
+      return;
+    }
+    if (conflateMs > 0) {
+      conflate(message);
+      return;
+    }
+    boolean flushNow;
+    synchronized (queue) {
+      // Checked again under the lock so nothing is retained after close() discarded the queue
+      if (closed || (queue.size() >= capacity && !makeRoom(message))) {
+        return;
+      }
+      message.retain();
+      queue.addLast(message);
+      queuedBytes += size(message);
+      flushNow = flushWindowMs <= 0 || queuedBytes >= flushMaxBytes;
+    }
+    if (flushNow) {
+      scheduleDrain();
+    } else if (flushPending.compareAndSet(false, true)) {
+      flushScheduler.schedule(() -> {
+        flushPending.set(false);
+        scheduleDrain();
+      }, flushWindowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void onReplayGap(long lostUpToId) {
+    if (!closed) {
+      replayGap.accumulateAndGet(lostUpToId, Math::max);
+      scheduleDrain();
+    }
+  }
+
+  /**
+   * Stops writing; queued messages are discarded.
+   */
+  public void close() {
+    closed = true;
+    synchronized (queue) {
+      discardQueued();
+    }
+  }
+
+  /**
+   * Stops writing like {@link #close()} and ends the emitter with an {@code error} event.
+   */
+  public void closeWithError(String code, String message) {
+    close();
+    try {
+      writer.execute(() -> sendSseError(emitter, code, message, null));
+    } catch (RejectedExecutionException e) {
+      sendSseError(emitter, code, message, null);
+    }
+  }
+
+  /**
+   * Asks the writer to send a keep-alive comment unless it writes a message first.
+   */
+  public void requestHeartbeat() {
+    if (!closed) {
+      heartbeatDue.set(true);
+      scheduleDrain();
+    }
+  }
+
+  /**
+   * Whether the stream receives messages of the broker.
+   */
+  public boolean receivesFrom(Long brokerId) {
+    return brokerIds.contains(brokerId);
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * {@link System#nanoTime()} of the last successful write to the emitter.
+   */
+  public long lastWriteNanos() {
+    return lastWriteNanos;
+  }
+
+  public String id() {
+    return id;
+  }
+
+  public SseEmitter emitter() {
+    return emitter;
+  }
+
+  public SseStreamStats stats() {
+    int depth;
+    synchronized (queue) {
+      depth = queue.size() + latest.size();
+    }
+    return SseStreamStats.builder().id(id).brokerId(brokerId).topic(topic)
+        .overflowPolicy(overflowPolicy).queueDepth(depth).queueCapacity(capacity).sent(sent.get())
+        .dropped(dropped.get()).build();
+  }
+
+  private void conflate(InboundMessage message) {
+    synchronized (queue) {
+      TopicKey key = TopicKey.of(message);
+      if (closed) {
+        return;
+      }
+      if (!latest.containsKey(key) && latest.size() >= capacity) {
+        dropped.incrementAndGet();
+        return;
+      }
+      message.retain();
+      InboundMessage superseded = latest.put(key, message);
+      if (superseded != null) {
+        superseded.release();
+        dropped.incrementAndGet();
+      }
+    }
+    if (flushPending.compareAndSet(false, true)) {
+      flushScheduler.schedule(this::tick, conflateMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Hands the conflated snapshot to the writer. While the previous snapshot is still being
+   * written the messages stay in the map, so a slow client gets fewer, fresher snapshots.
+   */
+  private void tick() {
+    if (closed) {
+      return;
+    }
+    // Cleared first so a message arriving during the hand-over schedules the next tick
+    flushPending.set(false);
+    boolean behind;
+    synchronized (queue) {
+      behind = !queue.isEmpty();
+      if (!behind) {
+        for (InboundMessage message : latest.values()) {
+          queue.addLast(message);
+          queuedBytes += size(message);
+        }
+        latest.clear();
+      }
+    }
+    if (!behind) {
+      scheduleDrain();
+    } else if (flushPending.compareAndSet(false, true)) {
+      flushScheduler.schedule(this::tick, conflateMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Applies the overflow policy to a full queue. Returns whether the new message should still be
+   * appended.
+   */
+  private boolean makeRoom(InboundMessage message) {
+    dropped.incrementAndGet();
+    switch (overflowPolicy) {
+      case DROP_NEWEST -> {
+        return false;
+      }
+      case CONFLATE_BY_TOPIC -> {
+        TopicKey key = TopicKey.of(message);
+        for (Iterator<InboundMessage> it = queue.iterator(); it.hasNext(); ) {
+          InboundMessage queued = it.next();
+          if (TopicKey.of(queued).equals(key)) {
+            // Only the latest value of a topic is worth sending
+            it.remove();
+            queuedBytes -= size(queued);
+            queued.release();
+            message.retain();
+            queue.addLast(message);
+            queuedBytes += size(message);
+            return false;
+          }
+        }
+        dropOldest();
+        return true;
+      }
+      case DISCONNECT -> {
+        log.warn("Closing slow SSE stream {} for broker {} topic {}", id, brokerId, topic);
+        closed = true;
+        discardQueued();
+        writer.execute(() -> sendSseError(emitter, "SLOW_CONSUMER",
+            "Send queue of " + capacity + " messages overflowed", null));
+        return false;
+      }
+      default -> {
+        dropOldest();
+        return true;
+      }
+    }
+  }
+
+  private void scheduleDrain() {
+    if (!draining.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      writer.execute(this::drain);
+    } catch (RejectedExecutionException e) {
+      draining.set(false);
+      log.warn("SSE writer rejected stream {}: {}", id, e.getMessage());
+    }
+  }
+
+  private void drain() {
+    try {
+      boolean wrote = false;
+      List<InboundMessage> batch;
+      while (!closed && sendReplayGap() && !(batch = pollBatch()).isEmpty()) {
+        try {
+          sink.write(batch);
+        } finally {
+          batch.forEach(InboundMessage::release);
+        }
+        sent.addAndGet(batch.size());
+        lastWriteNanos = System.nanoTime();
+        wrote = true;
+      }
+      if (heartbeatDue.getAndSet(false) && !wrote && !closed) {
+        sendHeartbeat();
+      }
+    } finally {
+      draining.set(false);
+    }
+    if (!closed && (hasQueued() || heartbeatDue.get() || replayGap.get() != NO_GAP)) {
+      // A message arrived after the last poll but before the flag was cleared
+      scheduleDrain();
+    }
+  }
+
+  private void sendHeartbeat() {
+    try {
+      emitter.send(SseEmitter.event().comment("keep-alive"));
+      lastWriteNanos = System.nanoTime();
+    } catch (Exception ex) {
+      close();
+      sendSseError(emitter, "HEARTBEAT", "Heartbeat failed: " + ex.getMessage(), ex);
+      emitter.completeWithError(ex);
+    }
+  }
+
+  /**
+   * Writes the pending gap event, if any; false when the stream failed.
+   */
+  private boolean sendReplayGap() {
+    long lostUpToId = replayGap.getAndSet(NO_GAP);
+    if (lostUpToId == NO_GAP) {
+      return true;
+    }
+    try {
+      emitter.send(SseEmitter.event().name("gap").data(lostUpToId));
+      lastWriteNanos = System.nanoTime();
+      return true;
+    } catch (Exception ex) {
+      close();
+      sendSseError(emitter, "REPLAY_GAP", "Gap event failed: " + ex.getMessage(), ex);
+      emitter.completeWithError(ex);
+      return false;
+    }
+  }
+
+  /**
+   * Takes the queued messages, up to {@code flushMaxBytes} when a flush window or conflation is
+   * set and one message otherwise.
+   */
+  private List<InboundMessage> pollBatch() {
+    boolean batched = flushWindowMs > 0 || conflateMs > 0;
+    synchronized (queue) {
+      List<InboundMessage> batch = new ArrayList<>(batched ? queue.size() : 1);
+      long batchBytes = 0;
+      while (!queue.isEmpty() && (batch.isEmpty() || (batched && batchBytes < flushMaxBytes))) {
+        InboundMessage message = queue.pollFirst();
+        batchBytes += size(message);
+        batch.add(message);
+      }
+      queuedBytes -= batchBytes;
+      return batch;
+    }
+  }
+
+  private void dropOldest() {
+    InboundMessage oldest = queue.pollFirst();
+    if (oldest != null) {
+      queuedBytes -= size(oldest);
+      oldest.release();
+    }
+  }
+
+  private void discardQueued() {
+    queue.forEach(InboundMessage::release);
+    latest.values().forEach(InboundMessage::release);
+    queue.clear();
+    latest.clear();
+    queuedBytes = 0;
+  }
+
+  private static int size(InboundMessage message) {
+    return message.publish().getPayload().map(ByteBuffer::remaining).orElse(0);
+  }
+
+  private boolean hasQueued() {
+    synchronized (queue) {
+      return !queue.isEmpty();
+    }
+  }
+
+  /**
+   * A multi-topic stream carries several brokers, which may use the same topic names.
+   */
+  private record TopicKey(Long brokerId, String topic) {
+
+    static TopicKey of(InboundMessage message) {
+      return new TopicKey(message.brokerId(), message.publish().getTopic().toString());
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.hivemq.httpmqttbridge.subscribe.stream;
+
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
+import com.hivemq.httpmqttbridge.subscribe.response.SseStreamStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Creates and tracks the active {@link SseStream}s and owns the writer pool that drains them.
+ * With {@code spring.threads.virtual.enabled} each drain runs on its own virtual thread instead of
+ * the fixed pool, so a stream blocked on a slow client does not hold a platform thread. Streams
+ * of an evicted broker are ended with an error event.
+ */
+
+@Component
+public class SseStreamRegistry {
+
+  private final ConcurrentMap<String, SseStream> streams = new ConcurrentHashMap<>();
+
+  @Value("${mqtt.subscription.sse.queue-capacity:1024}")
+  private int queueCapacity;
+
+  @Value("${mqtt.subscription.sse.overflow-policy:drop-oldest}")
+  private String overflowPolicy;
+
+  @Value("${mqtt.subscription.sse.writer-threads:16}")
+  private int writerThreads;
+
+  @Value("${mqtt.subscription.sse.flush-window-ms:0}")
+  private long flushWindowMs;
+
+  @Value("${mqtt.subscription.sse.flush-max-bytes:65536}")
+  private int flushMaxBytes;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  private ExecutorService writer;
+
+  private ScheduledExecutorService flushScheduler;
+
+  @PostConstruct
+  void start() {
+    if (virtualThreads) {
+      writer = Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("mqtt-sse-writer-", 1).factory());
+    } else {
+      AtomicInteger threadCount = new AtomicInteger();
+      writer = Executors.newFixedThreadPool(Math.max(1, writerThreads), runnable -> {
+        Thread thread = new Thread(runnable, "mqtt-sse-writer-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mqtt-sse-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  void stop() {
+    writer.shutdownNow();
+    flushScheduler.shutdownNow();
+  }
+
+  /**
+   * Registers a new stream that queues the messages accepted by {@code matcher}, or every message
+   * when it is null, and writes them with {@code sink}.
+   */
+  public SseStream open(Long brokerId, String topic, SseEmitter emitter, SseStreamOptions options,
+      Predicate<InboundMessage> matcher, SseWriter sink) {
+    return open(brokerId, null, topic, emitter, options, matcher, sink);
+  }
+
+  /**
+   * Like {@link #open(Long, String, SseEmitter, SseStreamOptions, Predicate, SseWriter)} for a
+   * stream multiplexing filters of several brokers.
+   */
+  public SseStream open(Set<Long> brokerIds, String topic, SseEmitter emitter,
+      SseStreamOptions options, Predicate<InboundMessage> matcher, SseWriter sink) {
+    return open(null, brokerIds, topic, emitter, options, matcher, sink);
+  }
+
+  private SseStream open(Long brokerId, Set<Long> brokerIds, String topic, SseEmitter emitter,
+      SseStreamOptions options, Predicate<InboundMessage> matcher, SseWriter sink) {
+    long windowMs = options.flushWindow() != null ? options.flushWindow().toMillis()
+        : flushWindowMs;
+    SseStream stream = SseStream.builder().id(UUID.randomUUID().toString()).brokerId(brokerId)
+        .brokerIds(brokerIds).topic(topic).emitter(emitter).capacity(queueCapacity)
+        .overflowPolicy(OverflowPolicy.fromName(overflowPolicy)).writer(writer).sink(sink)
+        .flushWindowMs(windowMs).flushMaxBytes(flushMaxBytes).flushScheduler(flushScheduler)
+        .conflateMs(options.conflate() != null ? options.conflate().toMillis() : 0)
+        .matcher(matcher).build();
+    streams.put(stream.id(), stream);
+    return stream;
+  }
+
+  public void close(SseStream stream) {
+    stream.close();
+    streams.remove(stream.id());
+  }
+
+  /**
+   * Ends every stream receiving from an evicted broker, multiplexed ones included, with a
+   * {@code BROKER_EVICTED} error event. Clients reconnect and subscribe through the broker's new
+   * client.
+   */
+  @EventListener
+  void onBrokerEvicted(MqttBrokerEvictedEvent event) {
+    for (SseStream stream : streams.values()) {
+      if (stream.receivesFrom(event.brokerId())) {
+        stream.closeWithError("BROKER_EVICTED", "Broker " + event.brokerId() + " was evicted");
+        streams.remove(stream.id());
+      }
+    }
+  }
+
+  public List<SseStreamStats> stats() {
+    return streams.values().stream().map(SseStream::stats)
+        .sorted(Comparator.comparingInt(SseStreamStats::queueDepth).reversed()).toList();
+  }
+}
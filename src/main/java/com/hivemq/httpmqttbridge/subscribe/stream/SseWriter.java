@@ -0,0 +1,13 @@
+package com.hivemq.httpmqttbridge.subscribe.stream;
+
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import java.util.List;
+
+/**
+ * Writes a batch of queued messages to the emitter of a stream, flushing once.
+ */
+@FunctionalInterface
+public interface SseWriter {
+
+  void write(List<InboundMessage> messages);
+}
@@ -7,6 +7,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.hivemq.httpmqttbridge.integration.setup.HttpMqttBridgeBaseIntegrationTest;
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
 import com.hivemq.httpmqttbridge.subscribe.service.HiveMqttSubscriptionService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -34,7 +35,7 @@ public class MqttSubscriptionControllerTest extends HttpMqttBridgeBaseIntegratio
             emitter.send(SseEmitter.event().name("message").data("test message"));
             emitter.complete();
             return null;
-        }).when(consumerService).stream(eq(BROKER_ID), eq(TOPIC), any(SseEmitter.class));
+        }).when(consumerService).stream(eq(BROKER_ID), eq(TOPIC), any(SseEmitter.class), any(SseStreamOptions.class));
 
         mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TOPIC)
                         .accept(MediaType.TEXT_EVENT_STREAM))
@@ -47,7 +48,7 @@ public class MqttSubscriptionControllerTest extends HttpMqttBridgeBaseIntegratio
     void shouldReturnErrorEventWhenStreamingFails() throws Exception {
         Mockito.doAnswer(invocation -> {
             throw new RuntimeException("MQTT subscription failed");
-        }).when(consumerService).stream(eq(BROKER_ID), eq(TOPIC), any(SseEmitter.class));
+        }).when(consumerService).stream(eq(BROKER_ID), eq(TOPIC), any(SseEmitter.class), any(SseStreamOptions.class));
 
         mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TOPIC)
                         .accept(MediaType.TEXT_EVENT_STREAM))
@@ -7,13 +7,16 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.connect.Mqtt5Connect;
 import com.hivemq.client.mqtt.mqtt5.message.connect.connack.Mqtt5ConnAck;
 import com.hivemq.httpmqttbridge.brokerconfig.domain.MqttBroker;
 import com.hivemq.httpmqttbridge.brokerconfig.domain.MqttBrokerCredentials;
 import com.hivemq.httpmqttbridge.brokerconfig.service.MqttBrokerService;
 import com.hivemq.httpmqttbridge.config.MqttProperties;
 import com.hivemq.httpmqttbridge.exception.MqttBrokerNotFoundException;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
 import com.hivemq.httpmqttbridge.external.client.hivemq.HiveMqttClientProvider;
+import com.hivemq.httpmqttbridge.external.client.hivemq.MqttClientExecutors;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -22,6 +25,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @ExtendWith(MockitoExtension.class)
 class HiveMqttClientProviderTest {
@@ -40,6 +45,8 @@ class HiveMqttClientProviderTest {
   private Mqtt5AsyncClient mqttClient;
   @Mock
   private Mqtt5ConnAck connAck;
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
 
   private HiveMqttClientProvider clientProvider;
   private MqttBroker testBroker;
@@ -49,7 +56,10 @@ class HiveMqttClientProviderTest {
   void setUp() {
     testBroker = new MqttBroker(BROKER_ID, HOST, PORT);
     credentials = new MqttBrokerCredentials(USERNAME, PASSWORD);
-    clientProvider = new HiveMqttClientProvider(mqttBrokerService, mqttProperties);
+    MqttClientExecutors executors = new MqttClientExecutors();
+    ReflectionTestUtils.invokeMethod(executors, "start");
+    clientProvider = new HiveMqttClientProvider(mqttBrokerService, mqttProperties, executors,
+        eventPublisher);
   }
 
   @Test
@@ -117,6 +127,7 @@ class HiveMqttClientProviderTest {
 
     CompletableFuture<Mqtt5AsyncClient> newClient = clientProvider.getClient(BROKER_ID);
     verify(mqttBrokerService, times(2)).getBrokerByBrokerId(BROKER_ID);
+    verify(eventPublisher).publishEvent(new MqttBrokerEvictedEvent(BROKER_ID));
   }
 
   @Test
@@ -147,4 +158,50 @@ class HiveMqttClientProviderTest {
     assertThat(result).isNotNull();
     verify(mqttBrokerService).getBrokerByBrokerId(BROKER_ID);
   }
+
+  @Test
+  void getClient_withPool_stripesTopicsOverMembers() {
+    ReflectionTestUtils.setField(clientProvider, "poolSize", 4);
+    when(mqttBrokerService.getBrokerByBrokerId(BROKER_ID)).thenReturn(Optional.of(testBroker));
+    when(mqttProperties.getBrokers()).thenReturn(
+        Map.of(BROKER_ID, credentials, MqttProperties.DEFAULT_BROKER_ID, credentials));
+
+    CompletableFuture<Mqtt5AsyncClient> first = clientProvider.getClient(BROKER_ID, "a");
+    CompletableFuture<Mqtt5AsyncClient> sameTopic = clientProvider.getClient(BROKER_ID, "a");
+    CompletableFuture<Mqtt5AsyncClient> otherTopic = clientProvider.getClient(BROKER_ID, "b");
+
+    assertThat(sameTopic).isSameAs(first);
+    assertThat(otherTopic).isNotSameAs(first);
+    verify(mqttBrokerService, times(2)).getBrokerByBrokerId(BROKER_ID);
+  }
+
+  @Test
+  void connectMessage_carriesConfiguredRestrictionsAndCredentials() {
+    ReflectionTestUtils.setField(clientProvider, "topicAliasMaximum", 8);
+    ReflectionTestUtils.setField(clientProvider, "receiveMaximum", 100);
+
+    Mqtt5Connect connect = ReflectionTestUtils.invokeMethod(clientProvider, "connectMessage",
+        credentials);
+
+    assertThat(connect.isCleanStart()).isTrue();
+    assertThat(connect.getRestrictions().getSendTopicAliasMaximum()).isEqualTo(8);
+    assertThat(connect.getRestrictions().getReceiveMaximum()).isEqualTo(100);
+    assertThat(connect.getSimpleAuth()).hasValueSatisfying(auth -> {
+      assertThat(auth.getUsername()).hasValueSatisfying(
+          username -> assertThat(username.toString()).isEqualTo(USERNAME));
+      assertThat(auth.getPassword()).isPresent();
+    });
+  }
+
+  @Test
+  void connectMessage_clampsOutOfRangeRestrictions() {
+    ReflectionTestUtils.setField(clientProvider, "topicAliasMaximum", -1);
+    ReflectionTestUtils.setField(clientProvider, "receiveMaximum", 0);
+
+    Mqtt5Connect connect = ReflectionTestUtils.invokeMethod(clientProvider, "connectMessage",
+        credentials);
+
+    assertThat(connect.getRestrictions().getSendTopicAliasMaximum()).isZero();
+    assertThat(connect.getRestrictions().getReceiveMaximum()).isEqualTo(1);
+  }
 }
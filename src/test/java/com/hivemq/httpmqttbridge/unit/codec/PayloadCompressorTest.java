@@ -0,0 +1,103 @@
+package com.hivemq.httpmqttbridge.unit.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCodec;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor.Encoding;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.config.MqttProperties.CompressionRule;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PayloadCompressorTest {
+
+  private PayloadCompressor compressor;
+
+  @BeforeEach
+  void setUp() {
+    CompressionRule brokerRule = new CompressionRule();
+    brokerRule.setBrokerId(2L);
+    brokerRule.setTopicFilter("metrics/#");
+    brokerRule.setLevel(Deflater.BEST_SPEED);
+    CompressionRule defaultRule = new CompressionRule();
+    defaultRule.setTopicFilter("sensors/+/json");
+
+    MqttProperties properties = new MqttProperties();
+    properties.getCompression().setMinSizeBytes(10);
+    properties.getCompression().setRules(List.of(brokerRule, defaultRule));
+    compressor = new PayloadCompressor(properties);
+  }
+
+  @Test
+  void encodingFor_matchesFirstRuleForBrokerAndTopic() {
+    assertThat(compressor.encodingFor(2L, "metrics/cpu", 100))
+        .isEqualTo(new Encoding(PayloadCodec.GZIP, Deflater.BEST_SPEED));
+    assertThat(compressor.encodingFor(1L, "metrics/cpu", 100)).isEqualTo(Encoding.NONE);
+    assertThat(compressor.encodingFor(1L, "sensors/a/json", 100))
+        .isEqualTo(new Encoding(PayloadCodec.GZIP, Deflater.DEFAULT_COMPRESSION));
+    assertThat(compressor.encodingFor(1L, "sensors/a/json", 5)).isEqualTo(Encoding.NONE);
+  }
+
+  @Test
+  void encode_atAnyLevel_decodesWithoutKnowingIt() {
+    byte[] payload = "{\"temp\":21}".repeat(100).getBytes(StandardCharsets.UTF_8);
+    Mqtt5Publish publish = Mqtt5Publish.builder().topic("sensors/a/json").userProperties()
+        .add(PayloadCodec.CONTENT_ENCODING_PROPERTY, PayloadCodec.GZIP.encodingName())
+        .applyUserProperties().build();
+    byte[] fastest = PayloadCodec.GZIP.encode(payload, Deflater.BEST_SPEED);
+    byte[] smallest = PayloadCodec.GZIP.encode(payload, Deflater.BEST_COMPRESSION);
+
+    assertThat(compressor.decode(publish, fastest)).isEqualTo(payload);
+    assertThat(compressor.decode(publish, smallest)).isEqualTo(payload);
+    assertThat(smallest.length).isLessThanOrEqualTo(fastest.length);
+  }
+
+  @Test
+  void decode_reversesCodecNamedInUserProperty() {
+    byte[] payload = "{\"temp\":21,\"temp\":21,\"temp\":21}".getBytes(StandardCharsets.UTF_8);
+    for (PayloadCodec codec : PayloadCodec.values()) {
+      Mqtt5Publish publish = Mqtt5Publish.builder().topic("sensors/a/json").userProperties()
+          .add(PayloadCodec.CONTENT_ENCODING_PROPERTY, codec.encodingName())
+          .applyUserProperties().build();
+
+      assertThat(compressor.decode(publish, codec.encode(payload))).isEqualTo(payload);
+    }
+  }
+
+  @Test
+  void decode_whenDecodedPayloadExceedsLimit_returnsPayloadUnchanged() {
+    MqttProperties properties = new MqttProperties();
+    properties.getCompression().setMaxDecodedBytes(1024);
+    PayloadCompressor limited = new PayloadCompressor(properties);
+    byte[] bomb = PayloadCodec.GZIP.encode(new byte[1025]);
+    Mqtt5Publish publish = Mqtt5Publish.builder().topic("a").userProperties()
+        .add(PayloadCodec.CONTENT_ENCODING_PROPERTY, PayloadCodec.GZIP.encodingName())
+        .applyUserProperties().build();
+
+    assertThat(limited.decode(publish, bomb)).isSameAs(bomb);
+    assertThat(limited.decode(publish, PayloadCodec.GZIP.encode(new byte[1024]))).hasSize(1024);
+  }
+
+  @Test
+  void decode_whenPayloadIsCorrupt_returnsPayloadUnchanged() {
+    byte[] payload = "not gzip".getBytes(StandardCharsets.UTF_8);
+    Mqtt5Publish publish = Mqtt5Publish.builder().topic("a").userProperties()
+        .add(PayloadCodec.CONTENT_ENCODING_PROPERTY, PayloadCodec.GZIP.encodingName())
+        .applyUserProperties().build();
+
+    assertThat(compressor.decode(publish, payload)).isSameAs(payload);
+  }
+
+  @Test
+  void decode_withoutUserProperty_returnsPayloadUnchanged() {
+    byte[] payload = "plain".getBytes(StandardCharsets.UTF_8);
+    Mqtt5Publish publish = Mqtt5Publish.builder().topic("a").build();
+
+    assertThat(compressor.decode(publish, payload)).isSameAs(payload);
+  }
+}
@@ -0,0 +1,45 @@
+package com.hivemq.httpmqttbridge.unit.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class MqttPropertiesTest {
+
+  private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+  @Test
+  void validate_acceptsDefaults() {
+    assertThat(validator.validate(new MqttProperties())).isEmpty();
+  }
+
+  @Test
+  void validate_rejectsDefaultQosOutsideMqttRange() {
+    MqttProperties properties = new MqttProperties();
+    properties.getPublisher().setQos(3);
+
+    Set<ConstraintViolation<MqttProperties>> violations = validator.validate(properties);
+
+    assertThat(violations).extracting(violation -> violation.getPropertyPath().toString())
+        .containsExactly("publisher.qos");
+  }
+
+  @Test
+  void validate_rejectsCompressionLevelOutsideDeflateRange() {
+    MqttProperties properties = new MqttProperties();
+    MqttProperties.CompressionRule rule = new MqttProperties.CompressionRule();
+    rule.setLevel(10);
+    properties.getCompression().setRules(List.of(rule));
+
+    Set<ConstraintViolation<MqttProperties>> violations = validator.validate(properties);
+
+    assertThat(violations).extracting(violation -> violation.getPropertyPath().toString())
+        .containsExactly("compression.rules[0].level");
+  }
+}
@@ -1,29 +1,43 @@
 package com.hivemq.httpmqttbridge.unit.publisher.controller;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.hivemq.httpmqttbridge.exception.MqttPublishInputException;
+import com.hivemq.httpmqttbridge.exception.MqttPublishRejectedException;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
 import com.hivemq.httpmqttbridge.publish.controller.MqttPublishController;
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
+import com.hivemq.httpmqttbridge.publish.response.PublishStatus;
 import com.hivemq.httpmqttbridge.publish.service.MqttPublisherService;
+import com.hivemq.httpmqttbridge.publish.service.MqttStreamPublisherService;
+import com.hivemq.httpmqttbridge.publish.service.PublishStatusTracker;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(MqttPublishController.class)
+@Import({PublishStatusTracker.class, MqttProperties.class})
 public class MqttPublishControllerTest {
 
   private static final String TEST_TOPIC = "test-topic";
@@ -33,6 +47,8 @@ public class MqttPublishControllerTest {
 
   @MockitoBean private MqttPublisherService hiveMqttPublisherService;
 
+  @MockitoBean private MqttStreamPublisherService mqttStreamPublisherService;
+
   @Test
   void publishMessage_whenBrokerExists_andPublishSucceeds_returns202WithJson() throws Exception {
 
@@ -64,9 +80,29 @@ public class MqttPublishControllerTest {
         .andExpect(jsonPath("$.topic", is(TEST_TOPIC)));
   }
 
+  @Test
+  void publishMessage_whenStoredInOutbox_returns202() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID), eq(TEST_TOPIC), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(PublishStatus.ACCEPTED));
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"msg\":\"hello\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.status", is("accepted")));
+  }
+
   @Test
   void publishMessage_whenBrokerMissing_returns404() throws Exception {
-    CompletableFuture<Void> pendingFuture = new CompletableFuture<>();
+    CompletableFuture<PublishStatus> pendingFuture = new CompletableFuture<>();
     Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID), eq(TEST_TOPIC), any(),any()))
         .thenReturn(pendingFuture);
 
@@ -86,4 +122,266 @@ public class MqttPublishControllerTest {
         .andExpect(status().isBadRequest())
         .andExpect(jsonPath("$.failureReason").isNotEmpty());
   }
+
+  @Test
+  void publishMessage_withOctetStream_passesRawBytesThrough() throws Exception {
+    byte[] raw = new byte[] {0x00, 0x01, (byte) 0xFF};
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID), eq(TEST_TOPIC), eq(raw), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .content(raw))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("published")));
+  }
+
+  @Test
+  void publishMessage_whenJsonMalformed_returns400WithoutPublishing() throws Exception {
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"msg\":"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.status", is("failed")));
+    Mockito.verifyNoInteractions(hiveMqttPublisherService);
+  }
+
+  @Test
+  void publishMessage_whenQueueFull_returns429WithRetryAfter() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID), eq(TEST_TOPIC), any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(
+            new MqttPublishRejectedException("Publish queue for broker 1 is full", 2)));
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"msg\":\"hello\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "2"))
+        .andExpect(jsonPath("$.status", is("failed")));
+  }
+
+  @Test
+  void publishMessage_withRespondAsync_returns202AndTracksStatus() throws Exception {
+    CompletableFuture<PublishStatus> pendingFuture = new CompletableFuture<>();
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID), eq(TEST_TOPIC), any(), any()))
+        .thenReturn(pendingFuture);
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("x-request-id", "req-async")
+                    .header("Prefer", "respond-async")
+                    .content("{\"msg\":\"hello\"}"))
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/mqtt/publish/req-async"))
+        .andExpect(jsonPath("$.status", is("accepted")));
+
+    mockMvc
+        .perform(get("/mqtt/publish/{requestId}", "req-async"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("accepted")));
+
+    pendingFuture.complete(null);
+    mockMvc
+        .perform(get("/mqtt/publish/{requestId}", "req-async"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("published")))
+        .andExpect(jsonPath("$.requestId", is("req-async")));
+  }
+
+  @Test
+  void publishMessage_withRespondAsync_whenQueueFull_returns429WithoutTracking() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID), eq(TEST_TOPIC), any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(
+            new MqttPublishRejectedException("Publish queue for broker 1 is full", 2)));
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("x-request-id", "req-rejected")
+                    .header("Prefer", "respond-async")
+                    .content("{\"msg\":\"hello\"}"))
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "2"));
+
+    mockMvc
+        .perform(get("/mqtt/publish/{requestId}", "req-rejected"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void publishMessage_withQos0Override_returns202WithoutWaitingForBroker() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID),
+            any(MqttPublishMessageRequest.class), any()))
+        .thenReturn(new CompletableFuture<>());
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .queryParam("qos", "0")
+                    .queryParam("retain", "true")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"metric\":1}"))
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.status", is("accepted")));
+    ArgumentCaptor<MqttPublishMessageRequest> messageCaptor =
+        ArgumentCaptor.forClass(MqttPublishMessageRequest.class);
+    Mockito.verify(hiveMqttPublisherService)
+        .publish(eq(BROKER_ID), messageCaptor.capture(), any());
+    assertThat(messageCaptor.getValue().qos()).isZero();
+    assertThat(messageCaptor.getValue().retain()).isTrue();
+  }
+
+  @Test
+  void publishMessage_withQos0_whenQueueFull_returns429() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID),
+            any(MqttPublishMessageRequest.class), any()))
+        .thenReturn(CompletableFuture.failedFuture(
+            new MqttPublishRejectedException("Publish queue for broker 1 is full", 2)));
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .queryParam("qos", "0")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"metric\":1}"))
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "2"));
+  }
+
+  @Test
+  void publishMessage_withQos0AndRespondAsync_tracksStatus() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publish(eq(BROKER_ID),
+            any(MqttPublishMessageRequest.class), any()))
+        .thenReturn(CompletableFuture.completedFuture(PublishStatus.PUBLISHED));
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .queryParam("qos", "0")
+                    .header("x-request-id", "req-qos0")
+                    .header("Prefer", "respond-async")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"metric\":1}"))
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/mqtt/publish/req-qos0"));
+
+    mockMvc
+        .perform(get("/mqtt/publish/{requestId}", "req-qos0"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("published")));
+  }
+
+  @Test
+  void publishMessage_withInvalidQos_returns400() throws Exception {
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send/{topic}", BROKER_ID, TEST_TOPIC)
+                    .queryParam("qos", "3")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{}"))
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isBadRequest());
+    Mockito.verifyNoInteractions(hiveMqttPublisherService);
+  }
+
+  @Test
+  void getPublishStatus_whenUnknown_returns404() throws Exception {
+    mockMvc
+        .perform(get("/mqtt/publish/{requestId}", "unknown"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void publishBatch_withNullBody_returns400() throws Exception {
+    mockMvc
+        .perform(
+            post("/mqtt/{brokerId}/send-batch", BROKER_ID)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("null"))
+        .andExpect(status().isBadRequest());
+    Mockito.verifyNoInteractions(hiveMqttPublisherService);
+  }
+
+  @Test
+  void publishBatch_whenOneMessageFails_returnsPerItemStatus() throws Exception {
+    Mockito.when(hiveMqttPublisherService.publishBatch(eq(BROKER_ID), any(), any()))
+        .thenReturn(List.of(CompletableFuture.completedFuture(null),
+            CompletableFuture.failedFuture(new MqttPublishInputException("Invalid topic"))));
+
+    String bodyJson =
+        """
+            [{"topic":"a","payload":{"msg":"hello"}},{"topic":"b","payload":1,"qos":0}]
+        """;
+
+    MvcResult pending =
+        mockMvc
+            .perform(
+                post("/mqtt/{brokerId}/send-batch", BROKER_ID)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(bodyJson))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(pending))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].status", is("published")))
+        .andExpect(jsonPath("$[0].topic", is("a")))
+        .andExpect(jsonPath("$[1].status", is("failed")))
+        .andExpect(jsonPath("$[1].failureReason", is("Invalid topic")));
+  }
 }
@@ -0,0 +1,239 @@
+package com.hivemq.httpmqttbridge.unit.publisher.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.exceptions.ConnectionFailedException;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.exception.MqttPublishException;
+import com.hivemq.httpmqttbridge.exception.MqttPublishRejectedException;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.publish.outbox.PublishOutbox;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+class PublishOutboxTest {
+
+  @Mock
+  MqttBrokerClientProvider<Mqtt5AsyncClient> provider;
+
+  @Mock
+  Mqtt5AsyncClient client;
+
+  @Captor
+  ArgumentCaptor<Mqtt5Publish> publishCaptor;
+
+  @TempDir
+  Path directory;
+
+  private final MqttProperties properties = new MqttProperties();
+
+  private PublishOutbox outbox;
+
+  @BeforeEach
+  void setUp() {
+    outbox = newOutbox();
+  }
+
+  @AfterEach
+  void tearDown() {
+    ReflectionTestUtils.invokeMethod(outbox, "stop");
+  }
+
+  @Test
+  void replay_publishesInOrderAndDrainsOutbox() {
+    outbox.append(1L, publish("a/1", "first")).join();
+    outbox.append(1L, publish("a/2", "second")).join();
+    assertThat(outbox.hasPending(1L)).isTrue();
+
+    when(provider.getClient(eq(1L), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    verify(client, times(2)).publish(publishCaptor.capture());
+    assertThat(publishCaptor.getAllValues()).extracting(p -> p.getTopic().toString())
+        .containsExactly("a/1", "a/2");
+    Mqtt5Publish first = publishCaptor.getAllValues().get(0);
+    assertThat(first.getQos()).isEqualTo(MqttQos.AT_LEAST_ONCE);
+    assertThat(first.isRetain()).isTrue();
+    assertThat(new String(first.getPayloadAsBytes(), StandardCharsets.UTF_8)).isEqualTo("first");
+    assertThat(outbox.hasPending(1L)).isFalse();
+  }
+
+  @Test
+  void replay_keepsRecordsWhileBrokerIsUnreachable() {
+    outbox.append(1L, publish("a/1", "first")).join();
+    when(provider.getClient(eq(1L), anyString())).thenReturn(CompletableFuture.failedFuture(
+        new MqttPublishException("Exception connecting to broker ID 1")));
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    assertThat(outbox.hasPending(1L)).isTrue();
+  }
+
+  @Test
+  void replay_dropsRecordRejectedByBrokerAndContinues() {
+    outbox.append(1L, publish("a/1", "first")).join();
+    outbox.append(1L, publish("a/2", "second")).join();
+    when(provider.getClient(eq(1L), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class)))
+        .thenReturn(CompletableFuture.failedFuture(new MqttPublishException("not authorized")))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    verify(client, times(2)).publish(any(Mqtt5Publish.class));
+    assertThat(outbox.hasPending(1L)).isFalse();
+  }
+
+  @Test
+  void replay_pausesOnConnectivityFailure() {
+    outbox.append(1L, publish("a/1", "first")).join();
+    when(provider.getClient(eq(1L), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class))).thenReturn(
+        CompletableFuture.failedFuture(new ConnectionFailedException("refused")));
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    assertThat(outbox.hasPending(1L)).isTrue();
+  }
+
+  @Test
+  void replay_stopsAtFailedRecordAndResumesFromItInOrder() {
+    for (int i = 1; i <= 4; i++) {
+      outbox.append(1L, publish("a/" + i, "record " + i)).join();
+    }
+    when(provider.getClient(eq(1L), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class)))
+        .thenReturn(CompletableFuture.completedFuture(null))
+        .thenReturn(CompletableFuture.completedFuture(null))
+        .thenReturn(CompletableFuture.failedFuture(new ConnectionFailedException("refused")))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    verify(client, times(3)).publish(any(Mqtt5Publish.class));
+    assertThat(outbox.hasPending(1L)).isTrue();
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    verify(client, times(5)).publish(publishCaptor.capture());
+    assertThat(publishCaptor.getAllValues()).extracting(p -> p.getTopic().toString())
+        .containsExactly("a/1", "a/2", "a/3", "a/3", "a/4");
+    assertThat(outbox.hasPending(1L)).isFalse();
+  }
+
+  @Test
+  void replay_keepsRecordWhoseAcknowledgementTimesOut() {
+    outbox.append(1L, publish("a/1", "first")).join();
+    when(provider.getClient(eq(1L), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class))).thenReturn(new CompletableFuture<>());
+    properties.getPublisher().getOutbox().setReplayTimeoutMs(10);
+
+    ReflectionTestUtils.invokeMethod(outbox, "replay");
+
+    assertThat(outbox.hasPending(1L)).isTrue();
+  }
+
+  @Test
+  void start_skipsDirectoriesThatAreNoBrokerId() throws Exception {
+    ReflectionTestUtils.invokeMethod(outbox, "stop");
+    Files.createDirectories(directory.resolve("lost+found"));
+
+    outbox = newOutbox();
+
+    assertThat(outbox.hasPending(1L)).isFalse();
+  }
+
+  @Test
+  void start_restoresPendingRecordsFromDisk() {
+    outbox.append(7L, publish("a/1", "first")).join();
+    ReflectionTestUtils.invokeMethod(outbox, "stop");
+
+    outbox = newOutbox();
+
+    assertThat(outbox.hasPending(7L)).isTrue();
+  }
+
+  @Test
+  void append_withSyncOnAppend_storesRecordDurably() {
+    properties.getPublisher().getOutbox().setSyncOnAppend(true);
+    outbox.append(7L, publish("a/1", "first")).join();
+    ReflectionTestUtils.invokeMethod(outbox, "stop");
+
+    outbox = newOutbox();
+
+    assertThat(outbox.hasPending(7L)).isTrue();
+  }
+
+  @Test
+  void append_failsWhenOutboxIsFull() {
+    properties.getPublisher().getOutbox().setMaxSegmentsPerBroker(1);
+
+    CompletableFuture<?> result = CompletableFuture.completedFuture(null);
+    for (int i = 0; i < 100 && !result.isCompletedExceptionally(); i++) {
+      result = outbox.append(2L, publish("a/1", "x".repeat(200)));
+    }
+
+    assertThat(result).isCompletedExceptionally();
+  }
+
+  @Test
+  void isConnectivityFailure_onlyMatchesUnreachableBroker() {
+    assertThat(PublishOutbox.isConnectivityFailure(new CompletionException(
+        new MqttPublishException("connect", new ConnectionFailedException("refused"))))).isTrue();
+    assertThat(PublishOutbox.isConnectivityFailure(
+        new MqttPublishRejectedException("full", 1))).isFalse();
+    assertThat(PublishOutbox.isConnectivityFailure(new CompletionException(
+        new TimeoutException()))).isFalse();
+  }
+
+  private PublishOutbox newOutbox() {
+    MqttProperties.Outbox settings = properties.getPublisher().getOutbox();
+    settings.setEnabled(true);
+    settings.setDirectory(directory.toString());
+    settings.setSegmentSizeBytes(4096);
+    settings.setMaxSegmentsPerBroker(4);
+    settings.setReplayBatchSize(100);
+    settings.setReplayIntervalMs(60000);
+    settings.setReplayTimeoutMs(1000);
+    PublishOutbox publishOutbox = new PublishOutbox(provider, properties);
+    ReflectionTestUtils.invokeMethod(publishOutbox, "start");
+    return publishOutbox;
+  }
+
+  private static Mqtt5Publish publish(String topic, String payload) {
+    return Mqtt5Publish.builder().topic(topic).qos(MqttQos.AT_LEAST_ONCE).retain(true)
+        .payload(payload.getBytes(StandardCharsets.UTF_8)).build();
+  }
+}
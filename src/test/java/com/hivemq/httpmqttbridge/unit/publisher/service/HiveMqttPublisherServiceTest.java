@@ -2,18 +2,37 @@ package com.hivemq.httpmqttbridge.unit.publisher.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.exception.MqttPublishException;
+import com.hivemq.httpmqttbridge.exception.MqttPublishInputException;
+import com.hivemq.httpmqttbridge.exception.MqttPublishRejectedException;
 import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.publish.outbox.PublishOutbox;
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
+import com.hivemq.httpmqttbridge.publish.response.PublishStatus;
 import com.hivemq.httpmqttbridge.publish.service.HiveMqttPublisherService;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -38,14 +57,16 @@ class HiveMqttPublisherServiceTest {
   @Captor
   ArgumentCaptor<Mqtt5Publish> publishCaptor;
 
+  private final MqttProperties properties = new MqttProperties();
+
   private HiveMqttPublisherService publisher;
 
   @BeforeEach
   void setUp() {
-    publisher = new HiveMqttPublisherService(provider, objectMapper);
-    // set private @Value fields used by the publisher
-    ReflectionTestUtils.setField(publisher, "qos", 1);     // maps to AT_LEAST_ONCE
-    ReflectionTestUtils.setField(publisher, "retain", true);
+    properties.getPublisher().setQos(1);     // maps to AT_LEAST_ONCE
+    properties.getPublisher().setRetain(true);
+    publisher = new HiveMqttPublisherService(provider, objectMapper,
+        new PayloadCompressor(properties), new PublishOutbox(provider, properties), properties);
   }
 
   @Test
@@ -58,7 +79,7 @@ class HiveMqttPublisherServiceTest {
     when(objectMapper.writeValueAsBytes(payload))
         .thenReturn("{\"msg\":\"hello\"}".getBytes());
 
-    when(provider.getClient(brokerId))
+    when(provider.getClient(brokerId, topic))
         .thenReturn(CompletableFuture.completedFuture(client));
 
     // HiveMQ async client returns a future when publishing; we complete it successfully
@@ -69,7 +90,7 @@ class HiveMqttPublisherServiceTest {
     var publishFuture = publisher.publish(brokerId, topic, payload, "req-1");
 
     // Assert
-    assertThatCode(publishFuture::join).doesNotThrowAnyException();
+    assertThat(publishFuture.join()).isEqualTo(PublishStatus.PUBLISHED);
 
     verify(client).publish(publishCaptor.capture());
     Mqtt5Publish sent = publishCaptor.getValue();
@@ -78,6 +99,171 @@ class HiveMqttPublisherServiceTest {
     assertThat(sent.getQos()).isEqualTo(MqttQos.AT_LEAST_ONCE); // qos=1
     assertThat(sent.isRetain()).isTrue();
 
-    verify(provider).getClient(brokerId);
+    verify(provider).getClient(brokerId, topic);
+  }
+
+  @Test
+  void publishBatch_pipelinesAllMessagesOnPooledClients() throws Exception {
+    Long brokerId = 1L;
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+    when(provider.getClient(eq(brokerId), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    List<CompletableFuture<PublishStatus>> results = publisher.publishBatch(brokerId, List.of(
+        MqttPublishMessageRequest.builder().topic("a/1").payload(Map.of()).build(),
+        MqttPublishMessageRequest.builder().topic("a/2").payload(Map.of()).qos(0).retain(false)
+            .build()), "req-1");
+
+    assertThat(results).hasSize(2);
+    results.forEach(result -> assertThatCode(result::join).doesNotThrowAnyException());
+    verify(provider).getClient(brokerId, "a/1");
+    verify(provider).getClient(brokerId, "a/2");
+    verify(client, times(2)).publish(publishCaptor.capture());
+    assertThat(publishCaptor.getAllValues().get(0).getQos()).isEqualTo(MqttQos.AT_LEAST_ONCE);
+    assertThat(publishCaptor.getAllValues().get(1).getQos()).isEqualTo(MqttQos.AT_MOST_ONCE);
+    assertThat(publishCaptor.getAllValues().get(1).isRetain()).isFalse();
+  }
+
+  @Test
+  void publishBatch_failsItemsWithInvalidQosOrMissingMessage() throws Exception {
+    Long brokerId = 1L;
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+    List<MqttPublishMessageRequest> messages = new ArrayList<>();
+    messages.add(MqttPublishMessageRequest.builder().topic("a/1").payload(Map.of()).qos(5)
+        .build());
+    messages.add(null);
+
+    List<CompletableFuture<PublishStatus>> results = publisher.publishBatch(brokerId, messages,
+        "req-1");
+
+    assertThat(results).hasSize(2);
+    results.forEach(result -> assertThatThrownBy(result::join)
+        .hasCauseInstanceOf(MqttPublishInputException.class));
+    verifyNoInteractions(provider);
+  }
+
+  @Test
+  void publish_withWildcardTopic_failsAsInvalidInput() throws Exception {
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+
+    CompletableFuture<PublishStatus> result = publisher.publish(1L, "a/#", Map.of(), "req-1");
+
+    assertThatThrownBy(result::join).hasCauseInstanceOf(MqttPublishInputException.class);
+    verifyNoInteractions(provider);
+  }
+
+  @Test
+  void publish_whenPayloadCannotBeSerialized_failsAsPublishError() throws Exception {
+    when(objectMapper.writeValueAsBytes(any())).thenThrow(new JsonMappingException(null, "boom"));
+
+    CompletableFuture<PublishStatus> result = publisher.publish(1L, "a/1", Map.of(), "req-1");
+
+    assertThatThrownBy(result::join).hasCauseInstanceOf(MqttPublishException.class);
+    verifyNoInteractions(provider);
+  }
+
+  @Test
+  void publish_whenQueueFull_rejectsWithoutPublishing() throws Exception {
+    Long brokerId = 1L;
+    MqttProperties.Queue queue = properties.getPublisher().getQueue();
+    queue.setEnabled(true);
+    queue.setCapacity(1);
+    queue.setBatchSize(1);
+    queue.setMaxInflight(1);
+    queue.setRetryAfterSeconds(3);
+    queue.setSendTimeoutMs(60000);
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+    when(provider.getClient(eq(brokerId), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    // The broker never acks, so the single inflight slot stays taken
+    when(client.publish(any(Mqtt5Publish.class))).thenReturn(new CompletableFuture<>());
+
+    try {
+      // At most one inflight, one held by the sender and one queued message can be accepted
+      List<CompletableFuture<PublishStatus>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(publisher.publish(brokerId, "test/topic", Map.of(), "req-" + i));
+      }
+
+      CompletableFuture<PublishStatus> rejected = results.stream()
+          .filter(CompletableFuture::isCompletedExceptionally).findFirst().orElseThrow();
+      assertThatThrownBy(rejected::join)
+          .hasCauseInstanceOf(MqttPublishRejectedException.class);
+    } finally {
+      ReflectionTestUtils.invokeMethod(publisher, "shutdownQueues");
+    }
+  }
+
+  @Test
+  void publish_whenQueuedPublishIsNotAcknowledged_failsAfterSendTimeout() throws Exception {
+    Long brokerId = 1L;
+    enableQueue(50L);
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+    when(provider.getClient(eq(brokerId), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class))).thenReturn(new CompletableFuture<>());
+
+    try {
+      CompletableFuture<PublishStatus> result = publisher.publish(brokerId, "test/topic",
+          Map.of(), "req-1");
+
+      assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+          .hasCauseInstanceOf(MqttPublishException.class);
+    } finally {
+      ReflectionTestUtils.invokeMethod(publisher, "shutdownQueues");
+    }
+  }
+
+  @Test
+  void onBrokerEvicted_shutsDownQueueOfBroker() throws Exception {
+    Long brokerId = 1L;
+    enableQueue(60000L);
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+    when(provider.getClient(eq(brokerId), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class))).thenReturn(new CompletableFuture<>());
+    List<CompletableFuture<PublishStatus>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      results.add(publisher.publish(brokerId, "test/topic", Map.of(), "req-" + i));
+    }
+
+    ReflectionTestUtils.invokeMethod(publisher, "onBrokerEvicted",
+        new MqttBrokerEvictedEvent(brokerId));
+
+    // Everything but the publish already handed to the client is failed at once
+    assertThat(results.stream().filter(CompletableFuture::isCompletedExceptionally).count())
+        .isGreaterThanOrEqualTo(1);
+    assertThat((Map<?, ?>) ReflectionTestUtils.getField(publisher, "queues")).isEmpty();
+  }
+
+  @Test
+  void publish_afterQueueShutDown_isRejectedInsteadOfQueued() throws Exception {
+    Long brokerId = 1L;
+    enableQueue(60000L);
+    when(objectMapper.writeValueAsBytes(any())).thenReturn("{}".getBytes());
+    when(provider.getClient(eq(brokerId), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(client));
+    when(client.publish(any(Mqtt5Publish.class))).thenReturn(new CompletableFuture<>());
+    publisher.publish(brokerId, "test/topic", Map.of(), "req-1");
+    verify(client, timeout(5000)).publish(any(Mqtt5Publish.class));
+
+    ReflectionTestUtils.invokeMethod(publisher, "shutdownQueues");
+    CompletableFuture<PublishStatus> late = publisher.publish(brokerId, "test/topic", Map.of(),
+        "req-2");
+
+    assertThatThrownBy(() -> late.get(5, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(MqttPublishRejectedException.class);
+  }
+
+  private void enableQueue(long sendTimeoutMs) {
+    MqttProperties.Queue queue = properties.getPublisher().getQueue();
+    queue.setEnabled(true);
+    queue.setCapacity(10);
+    queue.setBatchSize(1);
+    queue.setMaxInflight(1);
+    queue.setRetryAfterSeconds(1);
+    queue.setSendTimeoutMs(sendTimeoutMs);
   }
 }
@@ -0,0 +1,127 @@
+package com.hivemq.httpmqttbridge.unit.publisher.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.publish.request.MqttPublishMessageRequest;
+import com.hivemq.httpmqttbridge.publish.response.PublishStreamResponse;
+import com.hivemq.httpmqttbridge.publish.service.MqttPublisherService;
+import com.hivemq.httpmqttbridge.publish.service.MqttStreamPublisherService;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class MqttStreamPublisherServiceTest {
+
+  private static final Long BROKER_ID = 1L;
+
+  @Mock
+  MqttPublisherService publisherService;
+
+  @Captor
+  ArgumentCaptor<MqttPublishMessageRequest> messageCaptor;
+
+  private final MqttProperties properties = new MqttProperties();
+
+  private final MqttProperties.Stream settings = properties.getPublisher().getStream();
+
+  private MqttStreamPublisherService streamPublisher;
+
+  @BeforeEach
+  void setUp() {
+    settings.setMaxInflight(2);
+    settings.setMaxLineBytes(1024);
+    settings.setDrainTimeoutMs(1000);
+    settings.setPublishTimeoutMs(1000);
+    streamPublisher = new MqttStreamPublisherService(publisherService, new ObjectMapper(),
+        properties);
+  }
+
+  @Test
+  void publishStream_publishesEachLineWithRawPayload() throws Exception {
+    when(publisherService.publish(eq(BROKER_ID), any(MqttPublishMessageRequest.class), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    String ndjson = """
+        {"topic":"a/1","payload":{"temp": 21.5},"qos":0}
+
+        {"topic":"a/2","payload":"text","retain":true}
+        not-json
+        {"topic":"a/3","payload":[1,2]}""";
+
+    PublishStreamResponse response = streamPublisher.publishStream(BROKER_ID,
+        new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), "req-1");
+
+    assertThat(response.received()).isEqualTo(4);
+    assertThat(response.published()).isEqualTo(3);
+    assertThat(response.failed()).isEqualTo(1);
+    verify(publisherService, times(3)).publish(eq(BROKER_ID), messageCaptor.capture(),
+        eq("req-1"));
+    var messages = messageCaptor.getAllValues();
+    assertThat(new String((byte[]) messages.get(0).payload(), StandardCharsets.UTF_8))
+        .isEqualTo("{\"temp\": 21.5}");
+    assertThat(messages.get(0).qos()).isZero();
+    assertThat(new String((byte[]) messages.get(1).payload(), StandardCharsets.UTF_8))
+        .isEqualTo("\"text\"");
+    assertThat(messages.get(1).retain()).isTrue();
+    assertThat(messages.get(2).topic()).isEqualTo("a/3");
+  }
+
+  @Test
+  void publishStream_countsFailedPublishes() throws Exception {
+    when(publisherService.publish(eq(BROKER_ID), any(MqttPublishMessageRequest.class), any()))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+    PublishStreamResponse response = streamPublisher.publishStream(BROKER_ID,
+        new ByteArrayInputStream("{\"topic\":\"a\",\"payload\":1}\n".getBytes()), "req-2");
+
+    assertThat(response.received()).isEqualTo(1);
+    assertThat(response.published()).isZero();
+    assertThat(response.failed()).isEqualTo(1);
+  }
+
+  @Test
+  void publishStream_countsUnacknowledgedPublishesAsFailedAfterTimeout() throws Exception {
+    settings.setPublishTimeoutMs(50);
+    when(publisherService.publish(eq(BROKER_ID), any(MqttPublishMessageRequest.class), any()))
+        .thenAnswer(invocation -> new CompletableFuture<>());
+    String ndjson = """
+        {"topic":"a","payload":1}
+        {"topic":"b","payload":2}
+        {"topic":"c","payload":3}""";
+
+    PublishStreamResponse response = streamPublisher.publishStream(BROKER_ID,
+        new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), "req-3");
+
+    assertThat(response.received()).isEqualTo(3);
+    assertThat(response.failed()).isEqualTo(3);
+    assertThat(response.pending()).isZero();
+  }
+
+  @Test
+  void publishStream_reportsPublishesStillPendingAfterDrainTimeout() throws Exception {
+    settings.setDrainTimeoutMs(20);
+    settings.setPublishTimeoutMs(60000);
+    when(publisherService.publish(eq(BROKER_ID), any(MqttPublishMessageRequest.class), any()))
+        .thenAnswer(invocation -> new CompletableFuture<>());
+
+    PublishStreamResponse response = streamPublisher.publishStream(BROKER_ID,
+        new ByteArrayInputStream("{\"topic\":\"a\",\"payload\":1}\n".getBytes()), "req-4");
+
+    assertThat(response.published()).isZero();
+    assertThat(response.pending()).isEqualTo(1);
+  }
+}
@@ -2,21 +2,47 @@ package com.hivemq.httpmqttbridge.unit.subscription.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.hivemq.httpmqttbridge.exception.PollSessionLimitException;
 import com.hivemq.httpmqttbridge.subscribe.controller.MqttSubscriptionController;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilter;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilterRegistry;
+import com.hivemq.httpmqttbridge.subscribe.response.PolledMessage;
+import com.hivemq.httpmqttbridge.subscribe.response.SseStreamStats;
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
+import com.hivemq.httpmqttbridge.subscribe.request.TopicSubscription;
 import com.hivemq.httpmqttbridge.subscribe.service.HiveMqttSubscriptionService;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSession;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSessionRegistry;
+import com.hivemq.httpmqttbridge.subscribe.stream.OverflowPolicy;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStreamRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @WebMvcTest(MqttSubscriptionController.class)
@@ -31,16 +57,25 @@ public class MqttSubscriptionControllerTest {
     @MockitoBean
     private HiveMqttSubscriptionService consumerService;
 
+    @MockitoBean
+    private SseStreamRegistry sseStreamRegistry;
+
+    @MockitoBean
+    private MessageFilterRegistry messageFilterRegistry;
+
+    @MockitoBean
+    private PollSessionRegistry pollSessionRegistry;
+
     @Test
     void stream_whenTopicValid_startsSSEStream() throws Exception {
-        doNothing().when(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class));
+        doNothing().when(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class), any(SseStreamOptions.class));
 
         mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC))
                 .andExpect(request().asyncStarted())
                 .andReturn();
 
         ArgumentCaptor<SseEmitter> emitterCaptor = ArgumentCaptor.forClass(SseEmitter.class);
-        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), emitterCaptor.capture());
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), emitterCaptor.capture(), any(SseStreamOptions.class));
 
         SseEmitter emitter = emitterCaptor.getValue();
         assertThat(emitter).isNotNull();
@@ -50,12 +85,227 @@ public class MqttSubscriptionControllerTest {
     @Test
     void stream_whenServiceThrowsException_startsAsyncRequest() throws Exception {
         RuntimeException exception = new RuntimeException("Connection failed");
-        doThrow(exception).when(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class));
+        doThrow(exception).when(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class), any(SseStreamOptions.class));
 
         mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC))
                 .andExpect(request().asyncStarted());
 
-        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class));
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class), any(SseStreamOptions.class));
     }
 
+    @Test
+    void stream_whenLastEventIdSent_resumesAfterIt() throws Exception {
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .header("Last-Event-ID", "42"))
+                .andExpect(request().asyncStarted());
+
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class),
+            argThat(options -> options.lastEventId() == 42L));
+    }
+
+    @Test
+    void stream_whenFlushWindowSent_passesItToService() throws Exception {
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("flushWindow", "5ms"))
+                .andExpect(request().asyncStarted());
+
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class),
+            argThat(options -> Duration.ofMillis(5).equals(options.flushWindow())));
+    }
+
+    @Test
+    void stream_whenFlushWindowInvalid_returnsBadRequest() throws Exception {
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("flushWindow", "soon"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void stream_whenConflateSent_passesIntervalToService() throws Exception {
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("conflate", "250ms"))
+                .andExpect(request().asyncStarted());
+
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class),
+            argThat(options -> Duration.ofMillis(250).equals(options.conflate())));
+    }
+
+    @Test
+    void stream_whenGroupSent_passesItToService() throws Exception {
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("group", "workers"))
+                .andExpect(request().asyncStarted());
+
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class),
+            argThat(options -> "workers".equals(options.group())));
+    }
+
+    @Test
+    void stream_whenGroupInvalid_returnsBadRequest() throws Exception {
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("group", "a/b"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void stream_whenFilterSent_passesCompiledFilterToService() throws Exception {
+        MessageFilter filter = MessageFilter.compile("temperature > 20");
+        when(messageFilterRegistry.compile("temperature > 20")).thenReturn(filter);
+
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("filter", "temperature > 20"))
+                .andExpect(request().asyncStarted());
+
+        verify(consumerService).stream(eq(BROKER_ID), eq(TEST_TOPIC), any(SseEmitter.class),
+            argThat(options -> options.filter() == filter));
+    }
+
+    @Test
+    void stream_whenFilterInvalid_returnsBadRequest() throws Exception {
+        when(messageFilterRegistry.compile("temperature >"))
+            .thenThrow(new IllegalArgumentException("Expected a value at position 13"));
+
+        mockMvc.perform(get("/mqtt/{brokerId}/receive/{topic}", BROKER_ID, TEST_TOPIC)
+                        .param("filter", "temperature >"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamTopics_parsesBrokerTopicPairs() throws Exception {
+        mockMvc.perform(get("/mqtt/receive")
+                        .param("topic", "1:sensors/#", "2:alerts/+", "1:sensors/#"))
+                .andExpect(request().asyncStarted());
+
+        verify(consumerService).stream(
+                eq(List.of(new TopicSubscription(1L, "sensors/#"),
+                        new TopicSubscription(2L, "alerts/+"))),
+                any(SseEmitter.class), any(SseStreamOptions.class));
+    }
+
+    @Test
+    void streamTopics_whenTopicInvalid_returnsBadRequest() throws Exception {
+        mockMvc.perform(get("/mqtt/receive").param("topic", "sensors/#"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamTopics_whenFiltersOfOneBrokerOverlap_returnsBadRequest() throws Exception {
+        mockMvc.perform(get("/mqtt/receive").param("topic", "1:a/#", "1:a/b"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/mqtt/receive").param("topic", "1:a/#", "2:a/b"))
+                .andExpect(request().asyncStarted());
+    }
+
+    @Test
+    void streams_returnsQueueStats() throws Exception {
+        when(sseStreamRegistry.stats()).thenReturn(List.of(SseStreamStats.builder().id("s-1")
+            .brokerId(BROKER_ID).topic(TEST_TOPIC).overflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .queueDepth(3).queueCapacity(1024).sent(10).dropped(2).build()));
+
+        mockMvc.perform(get("/mqtt/streams"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value("s-1"))
+                .andExpect(jsonPath("$[0].overflowPolicy").value("drop-oldest"))
+                .andExpect(jsonPath("$[0].queueDepth").value(3))
+                .andExpect(jsonPath("$[0].dropped").value(2));
+    }
+
+    @Test
+    void createSession_returnsCreatedSession() throws Exception {
+        PollSession session = new PollSession("p-1", BROKER_ID, null, TEST_TOPIC, null, 100);
+        when(pollSessionRegistry.create(BROKER_ID, TEST_TOPIC, null, null))
+            .thenReturn(CompletableFuture.completedFuture(session));
+        when(pollSessionRegistry.idleTimeoutMs()).thenReturn(60000L);
+
+        MvcResult result = mockMvc.perform(post("/mqtt/{brokerId}/sessions", BROKER_ID)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"topic\":\"" + TEST_TOPIC + "\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Location", "/mqtt/1/sessions/p-1"))
+                .andExpect(jsonPath("$.id").value("p-1"))
+                .andExpect(jsonPath("$.bufferCapacity").value(100));
+    }
+
+    @Test
+    void createSession_whenSessionLimitReached_returns429() throws Exception {
+        when(pollSessionRegistry.create(BROKER_ID, TEST_TOPIC, null, null))
+            .thenReturn(CompletableFuture.failedFuture(new PollSessionLimitException(1)));
+
+        MvcResult result = mockMvc.perform(post("/mqtt/{brokerId}/sessions", BROKER_ID)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"topic\":\"" + TEST_TOPIC + "\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    void createSession_whenTopicMissing_returnsBadRequest() throws Exception {
+        mockMvc.perform(post("/mqtt/{brokerId}/sessions", BROKER_ID)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void poll_returnsMessagesAsJsonArray() throws Exception {
+        PollSession session = new PollSession("p-1", BROKER_ID, null, TEST_TOPIC, null, 100);
+        when(pollSessionRegistry.find(BROKER_ID, "p-1")).thenReturn(Optional.of(session));
+        when(pollSessionRegistry.poll(session, 500, 5000, null)).thenReturn(CompletableFuture
+            .completedFuture(List.of(PolledMessage.builder().id(9).topic(TEST_TOPIC)
+                .payload(TextNode.valueOf("hello")).build())));
+
+        MvcResult result = mockMvc.perform(get("/mqtt/{brokerId}/sessions/{id}/poll", BROKER_ID,
+                        "p-1").param("max", "500").param("wait", "5s"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(9))
+                .andExpect(jsonPath("$[0].topic").value(TEST_TOPIC))
+                .andExpect(jsonPath("$[0].payload").value("hello"));
+    }
+
+    @Test
+    void poll_passesAckToRegistry() throws Exception {
+        PollSession session = new PollSession("p-1", BROKER_ID, null, TEST_TOPIC, null, 100);
+        when(pollSessionRegistry.find(BROKER_ID, "p-1")).thenReturn(Optional.of(session));
+        when(pollSessionRegistry.poll(session, 500, 0, 9L))
+            .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        MvcResult result = mockMvc.perform(get("/mqtt/{brokerId}/sessions/{id}/poll", BROKER_ID,
+                        "p-1").param("ack", "9"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    void poll_whenSessionUnknown_returnsNotFound() throws Exception {
+        when(pollSessionRegistry.find(BROKER_ID, "missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/mqtt/{brokerId}/sessions/{id}/poll", BROKER_ID, "missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void deleteSession_removesSession() throws Exception {
+        PollSession session = new PollSession("p-1", BROKER_ID, null, TEST_TOPIC, null, 100);
+        when(pollSessionRegistry.find(BROKER_ID, "p-1")).thenReturn(Optional.of(session));
+
+        mockMvc.perform(delete("/mqtt/{brokerId}/sessions/{id}", BROKER_ID, "p-1"))
+                .andExpect(status().isNoContent());
+
+        verify(pollSessionRegistry).delete(session);
+    }
 }
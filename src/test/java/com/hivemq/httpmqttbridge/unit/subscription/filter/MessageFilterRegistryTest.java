@@ -0,0 +1,90 @@
+package com.hivemq.httpmqttbridge.unit.subscription.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilter;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilterRegistry;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class MessageFilterRegistryTest {
+
+  private final MessageFilterRegistry registry = new MessageFilterRegistry(new ObjectMapper(),
+      new PayloadCompressor(new MqttProperties()));
+
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.setField(registry, "cacheSize", 16);
+  }
+
+  @Test
+  void compile_sharesIdenticalExpressions() {
+    MessageFilter first = registry.compile("temperature > 20");
+
+    assertThat(registry.compile(" temperature > 20 ")).isSameAs(first);
+    assertThat(registry.compile("temperature > 21")).isNotSameAs(first);
+  }
+
+  @Test
+  void matches_comparesNumbersStringsAndBooleans() {
+    MessageFilter filter = registry.compile(
+        "temperature >= 20 and temperature < 30 and site.name == 'berlin' and active != false");
+
+    assertThat(registry.matches(filter, message(
+        "{\"temperature\":25,\"site\":{\"name\":\"berlin\"},\"active\":true}"))).isTrue();
+    assertThat(registry.matches(filter, message(
+        "{\"temperature\":30,\"site\":{\"name\":\"berlin\"},\"active\":true}"))).isFalse();
+    assertThat(registry.matches(filter, message(
+        "{\"temperature\":25,\"site\":{\"name\":\"paris\"},\"active\":true}"))).isFalse();
+    assertThat(registry.matches(filter, message(
+        "{\"temperature\":25,\"site\":{\"name\":\"berlin\"},\"active\":false}"))).isFalse();
+  }
+
+  @Test
+  void matches_rejectsMissingFieldsAndNonJsonPayloads() {
+    MessageFilter filter = registry.compile("status == \"ok\"");
+
+    assertThat(registry.matches(filter, message("{\"level\":1}"))).isFalse();
+    assertThat(registry.matches(filter, message("plain text"))).isFalse();
+    assertThat(registry.matches(registry.compile("status == null"),
+        message("{\"status\":null}"))).isTrue();
+  }
+
+  @Test
+  void matches_parsesEachMessageOnce() {
+    InboundMessage message = message("{\"a\":1}");
+
+    registry.matches(registry.compile("a == 1"), message);
+
+    assertThat(message.json(m -> {
+      throw new AssertionError("parsed twice");
+    }).get("a").asInt()).isEqualTo(1);
+  }
+
+  @Test
+  void compile_rejectsInvalidExpressions() {
+    assertThatThrownBy(() -> registry.compile("temperature >")).isInstanceOf(
+        IllegalArgumentException.class);
+    assertThatThrownBy(() -> registry.compile("temperature ~ 3")).isInstanceOf(
+        IllegalArgumentException.class);
+    assertThatThrownBy(() -> registry.compile("name == 'open")).isInstanceOf(
+        IllegalArgumentException.class);
+    assertThatThrownBy(() -> registry.compile("active > true")).isInstanceOf(
+        IllegalArgumentException.class);
+    assertThatThrownBy(() -> registry.compile("a == 1 or b == 2")).isInstanceOf(
+        IllegalArgumentException.class);
+  }
+
+  private static InboundMessage message(String payload) {
+    return new InboundMessage(1, Mqtt5Publish.builder().topic("sensors/1")
+        .payload(payload.getBytes(StandardCharsets.UTF_8)).build());
+  }
+}
@@ -0,0 +1,317 @@
+package com.hivemq.httpmqttbridge.unit.subscription.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttTopic;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAck;
+import com.hivemq.client.mqtt.mqtt5.message.unsubscribe.Mqtt5UnsubscribeBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.unsubscribe.unsuback.Mqtt5UnsubAck;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.external.client.hivemq.MqttClientExecutors;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.registry.MessageListener;
+import com.hivemq.httpmqttbridge.subscribe.registry.SubscriptionRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+@SuppressWarnings("unchecked")
+class SubscriptionRegistryTest {
+
+  private static final Long BROKER_ID = 1L;
+  private static final String FILTER = "sensors/#";
+
+  @Mock
+  Mqtt5AsyncClient client;
+
+  @Captor
+  ArgumentCaptor<Consumer<Mqtt5Publish>> callbackCaptor;
+
+  private Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Start subscribeStart;
+  private Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Start.Complete subscribeComplete;
+
+  private SubscriptionRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    MqttClientExecutors executors = new MqttClientExecutors();
+    ReflectionTestUtils.invokeMethod(executors, "start");
+    registry = new SubscriptionRegistry(executors);
+    ReflectionTestUtils.setField(registry, "subscribeTimeoutMs", 5000L);
+
+    subscribeStart = mock(Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Start.class);
+    subscribeComplete = mock(Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Start.Complete.class);
+    when(client.subscribeWith()).thenReturn(subscribeStart);
+    when(subscribeStart.topicFilter(anyString())).thenReturn(subscribeComplete);
+    when(subscribeComplete.qos(any())).thenReturn(subscribeComplete);
+    when(subscribeComplete.retainHandling(any())).thenReturn(subscribeComplete);
+    when(subscribeComplete.send())
+        .thenReturn(CompletableFuture.completedFuture(mock(Mqtt5SubAck.class)));
+  }
+
+  @Test
+  void attach_sharesOneBrokerSubscriptionAndFansOut() {
+    List<String> received = new ArrayList<>();
+    MessageListener first = pub -> received.add("first");
+    MessageListener second = pub -> received.add("second");
+
+    assertThat(registry.attach(BROKER_ID, client, FILTER, first)).isCompleted();
+    assertThat(registry.attach(BROKER_ID, client, FILTER, second)).isCompleted();
+
+    verify(client, times(1)).subscribeWith();
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("sensors/a/temp"));
+    assertThat(received).containsExactlyInAnyOrder("first", "second");
+    assertThat(registry.listenerCount(BROKER_ID, FILTER)).isEqualTo(2);
+  }
+
+  @Test
+  void detach_unsubscribesOnlyWhenLastListenerLeaves() {
+    MessageListener first = pub -> { };
+    MessageListener second = pub -> { };
+    Mqtt5UnsubscribeBuilder.Send.Start<CompletableFuture<Mqtt5UnsubAck>> unsubscribeStart = mock(
+        Mqtt5UnsubscribeBuilder.Send.Start.class);
+    Mqtt5UnsubscribeBuilder.Send.Complete<CompletableFuture<Mqtt5UnsubAck>> unsubscribeComplete =
+        mock(Mqtt5UnsubscribeBuilder.Send.Complete.class);
+    registry.attach(BROKER_ID, client, FILTER, first);
+    registry.attach(BROKER_ID, client, FILTER, second);
+
+    registry.detach(BROKER_ID, FILTER, first);
+    verify(client, never()).unsubscribeWith();
+
+    when(client.unsubscribeWith()).thenReturn(unsubscribeStart);
+    when(unsubscribeStart.topicFilter(FILTER)).thenReturn(unsubscribeComplete);
+    when(unsubscribeComplete.send())
+        .thenReturn(CompletableFuture.completedFuture(mock(Mqtt5UnsubAck.class)));
+    registry.detach(BROKER_ID, FILTER, second);
+
+    verify(client).unsubscribeWith();
+    assertThat(registry.listenerCount(BROKER_ID, FILTER)).isZero();
+  }
+
+  @Test
+  void attach_filterCoveredByActiveFilterIsNotSubscribedOnBroker() {
+    List<String> received = new ArrayList<>();
+    registry.attach(BROKER_ID, client, FILTER, pub -> received.add("wide"));
+
+    assertThat(registry.attach(BROKER_ID, client, "sensors/+/temp", pub -> received.add("narrow")))
+        .isCompleted();
+
+    verify(subscribeStart).topicFilter(FILTER);
+    verify(subscribeStart, never()).topicFilter("sensors/+/temp");
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("sensors/a/temp"));
+    callbackCaptor.getValue().accept(publish("sensors/a/humidity"));
+    callbackCaptor.getValue().accept(publish("other/a/temp"));
+    assertThat(received).containsExactlyInAnyOrder("wide", "narrow", "wide");
+  }
+
+  @Test
+  void attach_partiallyOverlappingFiltersAreMergedOnBrokerAndDeliverOnce() {
+    List<String> received = new ArrayList<>();
+    var unsubscribeStart = stubUnsubscribe();
+    registry.attach(BROKER_ID, client, "a/+/c", pub -> received.add("plus"));
+    assertThat(registry.attach(BROKER_ID, client, "a/b/#", pub -> received.add("hash")))
+        .isCompleted();
+    registry.attach(BROKER_ID, client, "a/b/c", pub -> received.add("exact"));
+
+    verify(subscribeStart).topicFilter("a/+/c");
+    verify(subscribeStart).topicFilter("a/+/#");
+    verify(subscribeStart, never()).topicFilter("a/b/#");
+    verify(subscribeStart, never()).topicFilter("a/b/c");
+    verify(unsubscribeStart).topicFilter("a/+/c");
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("a/b/c"));
+    callbackCaptor.getValue().accept(publish("a/x/y"));
+
+    assertThat(received).containsExactlyInAnyOrder("plus", "hash", "exact");
+  }
+
+  @Test
+  void detach_lastFilterCoveredByMergedFilterUnsubscribesIt() {
+    var unsubscribeStart = stubUnsubscribe();
+    MessageListener plus = pub -> { };
+    MessageListener hash = pub -> { };
+    registry.attach(BROKER_ID, client, "a/+/c", plus);
+    registry.attach(BROKER_ID, client, "a/b/#", hash);
+
+    registry.detach(BROKER_ID, "a/+/c", plus);
+    verify(unsubscribeStart, never()).topicFilter("a/+/#");
+
+    registry.detach(BROKER_ID, "a/b/#", hash);
+    verify(unsubscribeStart).topicFilter("a/+/#");
+    verify(unsubscribeStart, never()).topicFilter("a/b/#");
+  }
+
+  @Test
+  void attach_withGroupSubscribesSharedFilterAndDeliversInTurn() {
+    List<String> received = new ArrayList<>();
+    registry.attach(BROKER_ID, "workers", client, FILTER, pub -> received.add("first"), null);
+    registry.attach(BROKER_ID, "workers", client, FILTER, pub -> received.add("second"), null);
+
+    verify(subscribeStart).topicFilter("$share/workers/" + FILTER);
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("sensors/a/temp"));
+    callbackCaptor.getValue().accept(publish("sensors/b/temp"));
+    callbackCaptor.getValue().accept(publish("sensors/c/temp"));
+    assertThat(received).containsExactly("first", "second", "first");
+    assertThat(registry.listenerCount(BROKER_ID, FILTER)).isZero();
+  }
+
+  @Test
+  void manualAck_acknowledgesOnlyAfterEveryHoldIsReleased() {
+    ReflectionTestUtils.setField(registry, "manualAck", true);
+    List<InboundMessage> held = new ArrayList<>();
+    registry.attach(BROKER_ID, client, FILTER, message -> {
+      message.retain();
+      held.add(message);
+    });
+    registry.attach(BROKER_ID, client, "sensors/+/temp", message -> { });
+
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class), eq(true));
+    Mqtt5Publish publish = mock(Mqtt5Publish.class);
+    when(publish.getTopic()).thenReturn(MqttTopic.of("sensors/a/temp"));
+    callbackCaptor.getValue().accept(publish);
+    verify(publish, never()).acknowledge();
+
+    held.get(0).release();
+    verify(publish).acknowledge();
+  }
+
+  @Test
+  void attach_withLastEventIdReplaysMissedMessagesBeforeLiveOnes() {
+    ReflectionTestUtils.setField(registry, "replayBufferBytes", 4096);
+    ReflectionTestUtils.setField(registry, "replayMaxTotalBytes", 4096L);
+    List<Long> firstIds = new ArrayList<>();
+    registry.attach(BROKER_ID, client, FILTER, message -> firstIds.add(message.id()));
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("sensors/a"));
+    callbackCaptor.getValue().accept(publish("sensors/b"));
+    callbackCaptor.getValue().accept(publish("sensors/c"));
+
+    List<Long> resumedIds = new ArrayList<>();
+    registry.attach(BROKER_ID, client, FILTER, message -> resumedIds.add(message.id()),
+        firstIds.get(0));
+    callbackCaptor.getValue().accept(publish("sensors/d"));
+
+    assertThat(firstIds).hasSize(4);
+    assertThat(resumedIds).containsExactlyElementsOf(firstIds.subList(1, 4));
+    assertThat(firstIds).isSorted();
+  }
+
+  @Test
+  void attach_withLastEventIdBeforeLostMessages_reportsGapBeforeReplay() {
+    ReflectionTestUtils.setField(registry, "replayBufferBytes", 64);
+    ReflectionTestUtils.setField(registry, "replayMaxTotalBytes", 64L);
+    List<Long> firstIds = new ArrayList<>();
+    registry.attach(BROKER_ID, client, FILTER, message -> firstIds.add(message.id()));
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("sensors/a"));
+    callbackCaptor.getValue().accept(Mqtt5Publish.builder().topic("sensors/b")
+        .payload(new byte[100]).build());
+    callbackCaptor.getValue().accept(publish("sensors/c"));
+
+    List<String> resumed = new ArrayList<>();
+    registry.attach(BROKER_ID, client, FILTER, new MessageListener() {
+      @Override
+      public void onMessage(InboundMessage message) {
+        resumed.add("message:" + message.id());
+      }
+
+      @Override
+      public void onReplayGap(long lostUpToId) {
+        resumed.add("gap:" + lostUpToId);
+      }
+    }, firstIds.get(0));
+
+    assertThat(resumed).containsExactly("gap:" + firstIds.get(1), "message:" + firstIds.get(2));
+  }
+
+  @Test
+  void attach_whenReplayBudgetIsUsedUp_createsFilterWithoutRing() {
+    ReflectionTestUtils.setField(registry, "replayBufferBytes", 4096);
+    ReflectionTestUtils.setField(registry, "replayMaxTotalBytes", 4096L);
+    registry.attach(BROKER_ID, client, FILTER, message -> { });
+    List<Long> firstIds = new ArrayList<>();
+    registry.attach(BROKER_ID, client, "other/#", message -> firstIds.add(message.id()));
+    verify(client).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+        any(Executor.class));
+    callbackCaptor.getValue().accept(publish("other/a"));
+
+    List<Long> resumedIds = new ArrayList<>();
+    registry.attach(BROKER_ID, client, "other/#", message -> resumedIds.add(message.id()), 0L);
+
+    assertThat(firstIds).hasSize(1);
+    assertThat(resumedIds).isEmpty();
+  }
+
+  @Test
+  void onBrokerEvicted_dropsSubscriptionsAndResubscribesThroughNewClient() {
+    List<String> received = new ArrayList<>();
+    MessageListener listener = pub -> received.add("old");
+    registry.attach(BROKER_ID, client, FILTER, listener);
+
+    ReflectionTestUtils.invokeMethod(registry, "onBrokerEvicted",
+        new MqttBrokerEvictedEvent(BROKER_ID));
+    registry.detach(BROKER_ID, FILTER, listener);
+
+    assertThat(registry.listenerCount(BROKER_ID, FILTER)).isZero();
+    verify(client, never()).unsubscribeWith();
+
+    Mqtt5AsyncClient replacement = mock(Mqtt5AsyncClient.class);
+    when(replacement.subscribeWith()).thenReturn(subscribeStart);
+    assertThat(registry.attach(BROKER_ID, replacement, FILTER, pub -> received.add("new")))
+        .isCompleted();
+
+    verify(subscribeStart, times(2)).topicFilter(FILTER);
+    verify(replacement).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED),
+        callbackCaptor.capture(), any(Executor.class));
+    callbackCaptor.getValue().accept(publish("sensors/a/temp"));
+    assertThat(received).containsExactly("new");
+  }
+
+  private Mqtt5UnsubscribeBuilder.Send.Start<CompletableFuture<Mqtt5UnsubAck>> stubUnsubscribe() {
+    Mqtt5UnsubscribeBuilder.Send.Start<CompletableFuture<Mqtt5UnsubAck>> unsubscribeStart = mock(
+        Mqtt5UnsubscribeBuilder.Send.Start.class);
+    Mqtt5UnsubscribeBuilder.Send.Complete<CompletableFuture<Mqtt5UnsubAck>> unsubscribeComplete =
+        mock(Mqtt5UnsubscribeBuilder.Send.Complete.class);
+    when(client.unsubscribeWith()).thenReturn(unsubscribeStart);
+    when(unsubscribeStart.topicFilter(anyString())).thenReturn(unsubscribeComplete);
+    when(unsubscribeComplete.send())
+        .thenReturn(CompletableFuture.completedFuture(mock(Mqtt5UnsubAck.class)));
+    return unsubscribeStart;
+  }
+
+  private static Mqtt5Publish publish(String topic) {
+    return Mqtt5Publish.builder().topic(topic).build();
+  }
+}
@@ -0,0 +1,80 @@
+package com.hivemq.httpmqttbridge.unit.subscription.registry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hivemq.httpmqttbridge.subscribe.registry.TopicTrie;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TopicTrieTest {
+
+  private TopicTrie<String> trie;
+
+  @BeforeEach
+  void setUp() {
+    trie = new TopicTrie<>();
+    trie.add("a/b/c", "exact");
+    trie.add("a/+/c", "single");
+    trie.add("a/#", "multi");
+    trie.add("#", "all");
+    trie.add("$SYS/#", "system");
+  }
+
+  @Test
+  void match_returnsExactAndWildcardFilters() {
+    assertThat(match("a/b/c")).containsExactlyInAnyOrder("exact", "single", "multi", "all");
+    assertThat(match("a/x/c")).containsExactlyInAnyOrder("single", "multi", "all");
+    assertThat(match("a")).containsExactlyInAnyOrder("multi", "all");
+    assertThat(match("b")).containsExactly("all");
+  }
+
+  @Test
+  void match_rootWildcardsSkipSystemTopics() {
+    assertThat(match("$SYS/broker/uptime")).containsExactly("system");
+  }
+
+  @Test
+  void remove_stopsMatching() {
+    assertThat(trie.remove("a/+/c", "single")).isTrue();
+    assertThat(trie.remove("a/+/c", "single")).isFalse();
+
+    assertThat(match("a/x/c")).containsExactlyInAnyOrder("multi", "all");
+  }
+
+  @Test
+  void covers_comparesFilters() {
+    assertThat(TopicTrie.covers("a/#", "a/+/c")).isTrue();
+    assertThat(TopicTrie.covers("a/#", "a")).isTrue();
+    assertThat(TopicTrie.covers("a/+/c", "a/b/c")).isTrue();
+    assertThat(TopicTrie.covers("a/+/c", "a/#")).isFalse();
+    assertThat(TopicTrie.covers("a/b/c", "a/+/c")).isFalse();
+    assertThat(TopicTrie.covers("#", "$SYS/x")).isFalse();
+  }
+
+  @Test
+  void overlaps_whenSomeTopicMatchesBothFilters() {
+    assertThat(TopicTrie.overlaps("a/#", "a/b")).isTrue();
+    assertThat(TopicTrie.overlaps("a/#", "a")).isTrue();
+    assertThat(TopicTrie.overlaps("a/+", "+/b")).isTrue();
+    assertThat(TopicTrie.overlaps("a/+", "a/b/c")).isFalse();
+    assertThat(TopicTrie.overlaps("a/b", "a/c")).isFalse();
+    assertThat(TopicTrie.overlaps("#", "$SYS/x")).isFalse();
+    assertThat(TopicTrie.overlaps("$SYS/#", "$SYS/x")).isTrue();
+  }
+
+  @Test
+  void join_returnsFilterCoveringBoth() {
+    assertThat(TopicTrie.join("a/+/c", "a/b/#")).isEqualTo("a/+/#");
+    assertThat(TopicTrie.join("a/+", "+/b")).isEqualTo("+/+");
+    assertThat(TopicTrie.join("a", "a/#")).isEqualTo("a/#");
+    assertThat(TopicTrie.join("$SYS/a/+", "$SYS/+/b")).isEqualTo("$SYS/+/+");
+  }
+
+  private List<String> match(String topic) {
+    List<String> matches = new ArrayList<>();
+    trie.match(topic, matches::add);
+    return matches;
+  }
+}
@@ -0,0 +1,78 @@
+package com.hivemq.httpmqttbridge.unit.subscription.replay;
+
+import static com.hivemq.httpmqttbridge.common.codec.PayloadCodec.CONTENT_ENCODING_PROPERTY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.replay.ReplayRing;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ReplayRingTest {
+
+  @Test
+  void since_returnsMessagesAfterIdInOrder() {
+    ReplayRing ring = new ReplayRing(4096);
+    for (long id = 1; id <= 5; id++) {
+      ring.append(message(id, "payload-" + id));
+    }
+
+    List<InboundMessage> replayed = ring.since(3);
+
+    assertThat(replayed).extracting(InboundMessage::id).containsExactly(4L, 5L);
+    assertThat(new String(replayed.get(0).publish().getPayloadAsBytes(), StandardCharsets.UTF_8))
+        .isEqualTo("payload-4");
+    assertThat(replayed.get(0).publish().getTopic().toString()).isEqualTo("sensors/a");
+  }
+
+  @Test
+  void append_evictsOldestWhenFullAndWrapsAround() {
+    ReplayRing ring = new ReplayRing(200);
+    for (long id = 1; id <= 20; id++) {
+      ring.append(message(id, "payload-" + id));
+    }
+
+    List<InboundMessage> replayed = ring.since(0);
+
+    assertThat(replayed).isNotEmpty();
+    assertThat(replayed.get(replayed.size() - 1).id()).isEqualTo(20L);
+    assertThat(replayed).extracting(InboundMessage::id).isSorted().doesNotContain(1L);
+    assertThat(new String(replayed.get(replayed.size() - 1).publish().getPayloadAsBytes(),
+        StandardCharsets.UTF_8)).isEqualTo("payload-20");
+    assertThat(ring.lostUpTo()).isEqualTo(replayed.get(0).id() - 1);
+  }
+
+  @Test
+  void append_recordsMessageLargerThanRingAsLost() {
+    ReplayRing ring = new ReplayRing(200);
+    ring.append(message(1, "small"));
+    assertThat(ring.lostUpTo()).isEqualTo(Long.MIN_VALUE);
+
+    ring.append(message(2, "x".repeat(300)));
+    ring.append(message(3, "small"));
+
+    assertThat(ring.lostUpTo()).isEqualTo(2L);
+    assertThat(ring.since(0)).extracting(InboundMessage::id).containsExactly(1L, 3L);
+  }
+
+  @Test
+  void append_keepsContentEncoding() {
+    ReplayRing ring = new ReplayRing(4096);
+    ring.append(new InboundMessage(1, Mqtt5Publish.builder().topic("t").userProperties()
+        .add(CONTENT_ENCODING_PROPERTY, "gzip").applyUserProperties().payload(new byte[]{1, 2})
+        .build()));
+
+    Mqtt5Publish replayed = ring.since(0).get(0).publish();
+
+    assertThat(replayed.getUserProperties().asList()).hasSize(1);
+    assertThat(replayed.getUserProperties().asList().get(0).getValue().toString())
+        .isEqualTo("gzip");
+  }
+
+  private static InboundMessage message(long id, String payload) {
+    return new InboundMessage(id, Mqtt5Publish.builder().topic("sensors/a")
+        .payload(payload.getBytes(StandardCharsets.UTF_8)).build());
+  }
+}
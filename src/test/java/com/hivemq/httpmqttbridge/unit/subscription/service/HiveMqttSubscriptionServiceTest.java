@@ -4,24 +4,35 @@ package com.hivemq.httpmqttbridge.unit.subscription.service;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
 import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.external.client.hivemq.MqttClientExecutors;
+import com.hivemq.httpmqttbridge.subscribe.registry.SubscriptionRegistry;
 import com.hivemq.httpmqttbridge.subscribe.service.HiveMqttSubscriptionService;
+import com.hivemq.httpmqttbridge.subscribe.service.SseEmitterHandler;
+import com.hivemq.httpmqttbridge.subscribe.stream.HeartbeatWheel;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStreamRegistry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,10 +46,26 @@ class HiveMqttSubscriptionServiceTest {
   @Mock private MqttBrokerClientProvider<Mqtt5AsyncClient> clientProvider;
   @Mock private Mqtt5AsyncClient mqttClient;
   @Mock private SseEmitter emitter;
+  @Mock private SseEmitterHandler sseEmitterHandler;
+  @Mock private HeartbeatWheel heartbeatWheel;
+  private final MqttClientExecutors mqttClientExecutors = new MqttClientExecutors();
+  @Spy private SubscriptionRegistry subscriptionRegistry =
+      new SubscriptionRegistry(mqttClientExecutors);
+  @Spy private SseStreamRegistry sseStreamRegistry = new SseStreamRegistry();
   @InjectMocks private HiveMqttSubscriptionService consumerService;
 
   private static final Long BROKER_ID = 1L;
 
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.invokeMethod(mqttClientExecutors, "start");
+    ReflectionTestUtils.setField(subscriptionRegistry, "subscribeTimeoutMs", 5000L);
+    ReflectionTestUtils.setField(sseStreamRegistry, "queueCapacity", 16);
+    ReflectionTestUtils.setField(sseStreamRegistry, "overflowPolicy", "drop-oldest");
+    ReflectionTestUtils.setField(sseStreamRegistry, "writerThreads", 1);
+    ReflectionTestUtils.invokeMethod(sseStreamRegistry, "start");
+  }
+
   @Test
   void shouldHandleClientAcquisitionFailure() throws Exception {
     when(clientProvider.getClient(BROKER_ID))
@@ -52,20 +79,19 @@ class HiveMqttSubscriptionServiceTest {
     void shouldSetupSubscriptionWhenClientIsAcquired() {
         var subscribeStart = mock(Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Start.class);
         var subscribeComplete = mock(Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Start.Complete.class);
-        var callback = mock(Mqtt5AsyncClient.Mqtt5SubscribeAndCallbackBuilder.Call.Ex.class);
 
         when(clientProvider.getClient(BROKER_ID)).thenReturn(CompletableFuture.completedFuture(mqttClient));
         when(mqttClient.subscribeWith()).thenReturn(subscribeStart);
         when(subscribeStart.topicFilter(anyString())).thenReturn(subscribeComplete);
         when(subscribeComplete.qos(any())).thenReturn(subscribeComplete);
         when(subscribeComplete.retainHandling(any())).thenReturn(subscribeComplete);
-        when(subscribeComplete.callback(any())).thenReturn(callback);
-        when(callback.send()).thenReturn(new CompletableFuture<>());
+        when(subscribeComplete.send()).thenReturn(new CompletableFuture<>());
 
         consumerService.stream(BROKER_ID, TEST_TOPIC, emitter);
         verify(mqttClient, timeout(1000)).subscribeWith();
-        verify(callback).send();
-        verify(subscribeComplete).callback(callbackCaptor.capture());
+        verify(subscribeComplete).send();
+        verify(mqttClient).publishes(eq(MqttGlobalPublishFilter.SUBSCRIBED), callbackCaptor.capture(),
+                any(Executor.class));
         Consumer<Mqtt5Publish> captured = callbackCaptor.getValue();
         assertNotNull(captured);
     }
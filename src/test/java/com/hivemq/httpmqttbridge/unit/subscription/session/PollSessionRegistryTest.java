@@ -0,0 +1,79 @@
+package com.hivemq.httpmqttbridge.unit.subscription.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerClientProvider;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.subscribe.filter.MessageFilterRegistry;
+import com.hivemq.httpmqttbridge.subscribe.registry.SubscriptionRegistry;
+import com.hivemq.httpmqttbridge.subscribe.response.PolledMessage;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSession;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSessionRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+class PollSessionRegistryTest {
+
+  private static final String TOPIC = "sensors/#";
+
+  @Mock
+  MqttBrokerClientProvider<Mqtt5AsyncClient> clientProvider;
+
+  @Mock
+  SubscriptionRegistry subscriptionRegistry;
+
+  @Mock
+  MessageFilterRegistry messageFilterRegistry;
+
+  @Mock
+  PayloadCompressor payloadCompressor;
+
+  @Mock
+  Mqtt5AsyncClient client;
+
+  private PollSessionRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new PollSessionRegistry(clientProvider, subscriptionRegistry,
+        messageFilterRegistry, payloadCompressor);
+    ReflectionTestUtils.setField(registry, "bufferCapacity", 10);
+    ReflectionTestUtils.setField(registry, "maxWaitMs", 30000L);
+    ReflectionTestUtils.setField(registry, "maxBatch", 100);
+    ReflectionTestUtils.setField(registry, "maxSessions", 10);
+    when(clientProvider.getClient(any())).thenReturn(CompletableFuture.completedFuture(client));
+    when(subscriptionRegistry.attach(any(), isNull(), eq(client), anyString(), any(),
+        isNull())).thenReturn(CompletableFuture.completedFuture(null));
+  }
+
+  @Test
+  void onBrokerEvicted_removesSessionsOfBrokerAndEndsWaitingPolls() {
+    PollSession evicted = registry.create(1L, TOPIC, null, null).join();
+    PollSession other = registry.create(2L, TOPIC, null, null).join();
+    CompletableFuture<List<PolledMessage>> waiting = registry.poll(evicted, 10, 30000, null);
+
+    ReflectionTestUtils.invokeMethod(registry, "onBrokerEvicted", new MqttBrokerEvictedEvent(1L));
+
+    assertThat(waiting).isCompletedWithValue(List.of());
+    assertThat(registry.find(1L, evicted.id())).isEmpty();
+    assertThat(registry.find(2L, other.id())).contains(other);
+    verify(subscriptionRegistry).detach(1L, null, TOPIC, evicted);
+    verify(subscriptionRegistry, never()).detach(2L, null, TOPIC, other);
+  }
+}
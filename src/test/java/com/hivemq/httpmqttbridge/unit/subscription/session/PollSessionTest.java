@@ -0,0 +1,146 @@
+package com.hivemq.httpmqttbridge.unit.subscription.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.session.PollSession;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class PollSessionTest {
+
+  private final PollSession session = new PollSession("p-1", 1L, null, "sensors/#", null, 3);
+
+  @Test
+  void poll_returnsBufferedMessagesUpToMax() {
+    for (int i = 1; i <= 3; i++) {
+      session.onMessage(message(i));
+    }
+
+    assertThat(ids(session.poll(2, 0).join())).containsExactly(1L, 2L);
+    assertThat(ids(session.poll(2, 0).join())).containsExactly(3L);
+    assertThat(session.poll(2, 0).join()).isEmpty();
+  }
+
+  @Test
+  void onMessage_dropsOldestWhenBufferIsFull() {
+    for (int i = 1; i <= 5; i++) {
+      session.onMessage(message(i));
+    }
+
+    assertThat(ids(session.poll(10, 0).join())).containsExactly(3L, 4L, 5L);
+    assertThat(session.dropped()).isEqualTo(2);
+  }
+
+  @Test
+  void poll_waitsForTheNextMessage() {
+    CompletableFuture<List<InboundMessage>> poll = session.poll(10, 5000);
+    assertThat(poll).isNotDone();
+
+    session.onMessage(message(7));
+
+    assertThat(ids(poll.join())).containsExactly(7L);
+    assertThat(session.buffered()).isZero();
+  }
+
+  @Test
+  void poll_answersEmptyAfterWaitTime() {
+    CompletableFuture<List<InboundMessage>> poll = session.poll(10, 20);
+
+    assertThat(poll.orTimeout(5, TimeUnit.SECONDS).join()).isEmpty();
+  }
+
+  @Test
+  void onMessage_skipsMessagesRejectedByMatcher() {
+    PollSession filtered = new PollSession("p-2", 1L, null, "sensors/#", m -> m.id() % 2 == 0, 3);
+    CompletableFuture<List<InboundMessage>> poll = filtered.poll(10, 5000);
+
+    filtered.onMessage(message(1));
+    assertThat(poll).isNotDone();
+    assertThat(filtered.buffered()).isZero();
+    filtered.onMessage(message(2));
+
+    assertThat(ids(poll.join())).containsExactly(2L);
+  }
+
+  @Test
+  void newerPoll_supersedesWaitingPoll() {
+    CompletableFuture<List<InboundMessage>> first = session.poll(10, 5000);
+    CompletableFuture<List<InboundMessage>> second = session.poll(10, 5000);
+
+    assertThat(first.join()).isEmpty();
+    session.onMessage(message(1));
+    assertThat(ids(second.join())).containsExactly(1L);
+  }
+
+  @Test
+  void isIdle_onlyWithoutRecentOrWaitingPolls() {
+    long later = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    assertThat(session.isIdle(later, 1000)).isTrue();
+
+    CompletableFuture<List<InboundMessage>> poll = session.poll(10, 5000);
+    assertThat(session.isIdle(later, 1000)).isFalse();
+
+    session.close();
+    assertThat(poll.join()).isEmpty();
+  }
+
+  @Test
+  void poll_releasesTakenMessagesOnlyWhenNextPollAcknowledgesThem() {
+    List<Long> acked = new ArrayList<>();
+    for (int i = 1; i <= 2; i++) {
+      long id = i;
+      InboundMessage message = new InboundMessage(id, Mqtt5Publish.builder().topic("sensors/1")
+          .build(), () -> acked.add(id));
+      session.onMessage(message);
+      message.release();
+    }
+
+    assertThat(ids(session.poll(10, 0).join())).containsExactly(1L, 2L);
+    assertThat(acked).isEmpty();
+    assertThat(session.unacknowledged()).isEqualTo(2);
+
+    assertThat(session.poll(10, 0).join()).isEmpty();
+    assertThat(acked).containsExactly(2L, 1L);
+    assertThat(session.unacknowledged()).isZero();
+  }
+
+  @Test
+  void poll_withAck_redeliversLaterMessagesInOrder() {
+    for (int i = 1; i <= 3; i++) {
+      session.onMessage(message(i));
+    }
+    assertThat(ids(session.poll(10, 0).join())).containsExactly(1L, 2L, 3L);
+
+    assertThat(ids(session.poll(10, 0, 1L).join())).containsExactly(2L, 3L);
+    assertThat(ids(session.poll(10, 0, 3L).join())).isEmpty();
+  }
+
+  @Test
+  void close_releasesUnacknowledgedMessages() {
+    List<Long> acked = new ArrayList<>();
+    InboundMessage message = new InboundMessage(1, Mqtt5Publish.builder().topic("sensors/1")
+        .build(), () -> acked.add(1L));
+    session.onMessage(message);
+    message.release();
+    session.poll(10, 0).join();
+
+    session.close();
+
+    assertThat(acked).containsExactly(1L);
+  }
+
+  private static List<Long> ids(List<InboundMessage> messages) {
+    return messages.stream().map(InboundMessage::id).toList();
+  }
+
+  private static InboundMessage message(long id) {
+    return new InboundMessage(id, Mqtt5Publish.builder().topic("sensors/1")
+        .payload(("{\"n\":" + id + "}").getBytes(StandardCharsets.UTF_8)).build());
+  }
+}
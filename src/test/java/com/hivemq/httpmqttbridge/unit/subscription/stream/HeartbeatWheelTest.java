@@ -0,0 +1,75 @@
+package com.hivemq.httpmqttbridge.unit.subscription.stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.hivemq.httpmqttbridge.subscribe.stream.HeartbeatWheel;
+import com.hivemq.httpmqttbridge.subscribe.stream.OverflowPolicy;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@ExtendWith(MockitoExtension.class)
+class HeartbeatWheelTest {
+
+  private static final int SLOTS = 4;
+
+  @Mock
+  SseEmitter emitter;
+
+  private HeartbeatWheel wheel;
+
+  @AfterEach
+  void tearDown() {
+    ReflectionTestUtils.invokeMethod(wheel, "stop");
+  }
+
+  @Test
+  void tick_sendsHeartbeatOnIdleStream() throws Exception {
+    wheel = wheel(20);
+    wheel.register(stream());
+
+    Thread.sleep(30);
+    rotate();
+
+    verify(emitter).send(any(SseEmitter.SseEventBuilder.class));
+  }
+
+  @Test
+  void tick_skipsStreamThatWroteWithinInterval() throws Exception {
+    wheel = wheel(60000);
+    wheel.register(stream());
+
+    rotate();
+
+    verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+  }
+
+  private HeartbeatWheel wheel(long heartbeatMs) {
+    HeartbeatWheel heartbeatWheel = new HeartbeatWheel();
+    ReflectionTestUtils.setField(heartbeatWheel, "heartbeatMs", heartbeatMs);
+    ReflectionTestUtils.setField(heartbeatWheel, "slotCount", SLOTS);
+    ReflectionTestUtils.invokeMethod(heartbeatWheel, "start");
+    // Drive the wheel by hand
+    ReflectionTestUtils.invokeMethod(heartbeatWheel, "stop");
+    return heartbeatWheel;
+  }
+
+  private void rotate() {
+    for (int i = 0; i <= SLOTS; i++) {
+      ReflectionTestUtils.invokeMethod(wheel, "tick");
+    }
+  }
+
+  private SseStream stream() {
+    return SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter).capacity(16)
+        .overflowPolicy(OverflowPolicy.DROP_OLDEST).writer(Runnable::run).sink(batch -> { })
+        .build();
+  }
+}
@@ -0,0 +1,89 @@
+package com.hivemq.httpmqttbridge.unit.subscription.stream;
+
+import static com.hivemq.httpmqttbridge.common.codec.PayloadCodec.CONTENT_ENCODING_PROPERTY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCodec;
+import com.hivemq.httpmqttbridge.common.codec.PayloadCompressor;
+import com.hivemq.httpmqttbridge.config.MqttProperties;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseFrameEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+
+class SseFrameEncoderTest {
+
+  private final SseFrameEncoder encoder = new SseFrameEncoder(
+      new PayloadCompressor(new MqttProperties()));
+
+  @Test
+  void encode_buildsWireFrameOnceAndCachesIt() {
+    InboundMessage message = message(7, "{\"t\":21.5}".getBytes(StandardCharsets.UTF_8), null);
+
+    Set<DataWithMediaType> frame = encoder.encode(message);
+
+    assertThat(text(frame)).isEqualTo("id:7\nevent:message\ndata:{\"t\":21.5}\n\n");
+    assertThat(encoder.encode(message)).isSameAs(frame);
+  }
+
+  @Test
+  void encode_splitsMultiLinePayloads() {
+    InboundMessage message = message(8, "{\r\n\"t\":1\n}".getBytes(StandardCharsets.UTF_8), null);
+
+    assertThat(text(encoder.encode(message)))
+        .isEqualTo("id:8\nevent:message\ndata:{\ndata:\"t\":1\ndata:}\n\n");
+  }
+
+  @Test
+  void encode_treatsLoneCarriageReturnAsLineBreak() {
+    byte[] payload = "a\rid:99\revent:x\r\n\rb".getBytes(StandardCharsets.UTF_8);
+    InboundMessage message = message(12, payload, null);
+
+    assertThat(text(encoder.encode(message))).isEqualTo(
+        "id:12\nevent:message\ndata:a\ndata:id:99\ndata:event:x\ndata:\ndata:b\n\n");
+  }
+
+  @Test
+  void encode_decodesCompressedPayloads() {
+    byte[] compressed = PayloadCodec.GZIP.encode("{}".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(text(encoder.encode(message(9, compressed, "gzip"))))
+        .isEqualTo("id:9\nevent:message\ndata:{}\n\n");
+  }
+
+  @Test
+  void encodeTagged_wrapsJsonPayloadWithBrokerAndTopic() {
+    InboundMessage message = new InboundMessage(10, 2L, Mqtt5Publish.builder().topic("sensors/a")
+        .payload("{\"t\":1}".getBytes(StandardCharsets.UTF_8)).build(), null);
+
+    assertThat(text(encoder.encodeTagged(message))).isEqualTo(
+        "id:10\nevent:message\n"
+        + "data:{\"brokerId\":2,\"topic\":\"sensors/a\",\"payload\":{\"t\":1}}\n\n");
+  }
+
+  @Test
+  void encodeTagged_quotesNonJsonPayload() {
+    InboundMessage message = new InboundMessage(11, 3L, Mqtt5Publish.builder().topic("alerts/x")
+        .payload("on \"fire\"".getBytes(StandardCharsets.UTF_8)).build(), null);
+
+    assertThat(text(encoder.encodeTagged(message))).isEqualTo(
+        "id:11\nevent:message\n"
+        + "data:{\"brokerId\":3,\"topic\":\"alerts/x\",\"payload\":\"on \\\"fire\\\"\"}\n\n");
+  }
+
+  private static InboundMessage message(long id, byte[] payload, String encoding) {
+    var builder = Mqtt5Publish.builder().topic("sensors/a");
+    if (encoding != null) {
+      builder = builder.userProperties().add(CONTENT_ENCODING_PROPERTY, encoding)
+          .applyUserProperties();
+    }
+    return new InboundMessage(id, builder.payload(payload).build());
+  }
+
+  private static String text(Set<DataWithMediaType> frame) {
+    return new String((byte[]) frame.iterator().next().getData(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,97 @@
+package com.hivemq.httpmqttbridge.unit.subscription.stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.external.client.MqttBrokerEvictedEvent;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.request.SseStreamOptions;
+import com.hivemq.httpmqttbridge.subscribe.response.SseStreamStats;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStream;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStreamRegistry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@ExtendWith(MockitoExtension.class)
+class SseStreamRegistryTest {
+
+  @Mock
+  SseEmitter emitter;
+
+  private final SseStreamRegistry registry = new SseStreamRegistry();
+
+  @AfterEach
+  void tearDown() {
+    ReflectionTestUtils.invokeMethod(registry, "stop");
+  }
+
+  @Test
+  void start_withVirtualThreads_drainsStreamsOnVirtualThreads() throws Exception {
+    Thread drainer = drainOneMessage(true);
+
+    assertThat(drainer.isVirtual()).isTrue();
+    assertThat(drainer.getName()).startsWith("mqtt-sse-writer-");
+  }
+
+  @Test
+  void start_withoutVirtualThreads_drainsStreamsOnDaemonPlatformThreads() throws Exception {
+    Thread drainer = drainOneMessage(false);
+
+    assertThat(drainer.isVirtual()).isFalse();
+    assertThat(drainer.isDaemon()).isTrue();
+    assertThat(drainer.getName()).startsWith("mqtt-sse-writer-");
+  }
+
+  @Test
+  void onBrokerEvicted_endsStreamsReceivingFromBrokerWithErrorEvent() throws Exception {
+    ReflectionTestUtils.setField(registry, "queueCapacity", 16);
+    ReflectionTestUtils.setField(registry, "overflowPolicy", "drop-oldest");
+    ReflectionTestUtils.setField(registry, "writerThreads", 1);
+    ReflectionTestUtils.invokeMethod(registry, "start");
+    SseEmitter multiplexedEmitter = mock(SseEmitter.class);
+    SseEmitter otherEmitter = mock(SseEmitter.class);
+    SseStream single = registry.open(1L, "a/#", emitter, SseStreamOptions.DEFAULTS, null,
+        batch -> { });
+    SseStream multiplexed = registry.open(Set.of(1L, 2L), "1:a/#,2:b/#", multiplexedEmitter,
+        SseStreamOptions.DEFAULTS, null, batch -> { });
+    SseStream other = registry.open(2L, "b/#", otherEmitter, SseStreamOptions.DEFAULTS, null,
+        batch -> { });
+
+    ReflectionTestUtils.invokeMethod(registry, "onBrokerEvicted", new MqttBrokerEvictedEvent(1L));
+
+    assertThat(single.isClosed()).isTrue();
+    assertThat(multiplexed.isClosed()).isTrue();
+    assertThat(other.isClosed()).isFalse();
+    verify(emitter, timeout(5000)).complete();
+    verify(multiplexedEmitter, timeout(5000)).complete();
+    verify(otherEmitter, never()).complete();
+    assertThat(registry.stats()).extracting(SseStreamStats::id).containsExactly(other.id());
+  }
+
+  private Thread drainOneMessage(boolean virtualThreads) throws Exception {
+    ReflectionTestUtils.setField(registry, "virtualThreads", virtualThreads);
+    ReflectionTestUtils.setField(registry, "queueCapacity", 16);
+    ReflectionTestUtils.setField(registry, "overflowPolicy", "drop-oldest");
+    ReflectionTestUtils.setField(registry, "writerThreads", 2);
+    ReflectionTestUtils.invokeMethod(registry, "start");
+    CompletableFuture<Thread> drainer = new CompletableFuture<>();
+
+    SseStream stream = registry.open(1L, "sensors/#", emitter, SseStreamOptions.DEFAULTS, null,
+        batch -> drainer.complete(Thread.currentThread()));
+    stream.onMessage(new InboundMessage(1, Mqtt5Publish.builder().topic("sensors/1").build()));
+
+    return drainer.get(5, TimeUnit.SECONDS);
+  }
+}
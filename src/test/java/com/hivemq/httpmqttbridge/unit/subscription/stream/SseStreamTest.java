@@ -0,0 +1,310 @@
+package com.hivemq.httpmqttbridge.unit.subscription.stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.httpmqttbridge.subscribe.registry.InboundMessage;
+import com.hivemq.httpmqttbridge.subscribe.stream.OverflowPolicy;
+import com.hivemq.httpmqttbridge.subscribe.stream.SseStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@ExtendWith(MockitoExtension.class)
+class SseStreamTest {
+
+  @Mock
+  SseEmitter emitter;
+
+  private final Queue<Runnable> writerTasks = new ArrayDeque<>();
+  private final List<String> written = new ArrayList<>();
+  private final List<Integer> batches = new ArrayList<>();
+  private final List<Long> brokers = new ArrayList<>();
+
+  @Test
+  void onMessage_writesInOrderOnWriterTask() {
+    SseStream stream = stream(OverflowPolicy.DROP_OLDEST);
+
+    stream.onMessage(publish("a", "1"));
+    stream.onMessage(publish("a", "2"));
+    assertThat(written).isEmpty();
+    runWriter();
+
+    assertThat(written).containsExactly("a=1", "a=2");
+    assertThat(stream.stats().sent()).isEqualTo(2);
+    assertThat(stream.stats().queueDepth()).isZero();
+  }
+
+  @Test
+  void dropOldest_keepsNewestMessages() {
+    SseStream stream = stream(OverflowPolicy.DROP_OLDEST);
+
+    for (int i = 1; i <= 4; i++) {
+      stream.onMessage(publish("a", String.valueOf(i)));
+    }
+    runWriter();
+
+    assertThat(written).containsExactly("a=3", "a=4");
+    assertThat(stream.stats().dropped()).isEqualTo(2);
+  }
+
+  @Test
+  void dropNewest_keepsOldestMessages() {
+    SseStream stream = stream(OverflowPolicy.DROP_NEWEST);
+
+    for (int i = 1; i <= 4; i++) {
+      stream.onMessage(publish("a", String.valueOf(i)));
+    }
+    runWriter();
+
+    assertThat(written).containsExactly("a=1", "a=2");
+    assertThat(stream.stats().dropped()).isEqualTo(2);
+  }
+
+  @Test
+  void conflateByTopic_replacesQueuedMessageOfSameTopic() {
+    SseStream stream = stream(OverflowPolicy.CONFLATE_BY_TOPIC);
+
+    stream.onMessage(publish("a", "1"));
+    stream.onMessage(publish("b", "1"));
+    stream.onMessage(publish("a", "2"));
+    runWriter();
+
+    assertThat(written).containsExactly("b=1", "a=2");
+  }
+
+  @Test
+  void conflateByTopic_keepsSameTopicOfOtherBroker() {
+    SseStream stream = SseStream.builder().id("s-1").topic("1:a,2:a").emitter(emitter).capacity(2)
+        .overflowPolicy(OverflowPolicy.CONFLATE_BY_TOPIC).writer(writerTasks::add)
+        .sink(this::write).build();
+
+    stream.onMessage(publish(1L, "a", "1"));
+    stream.onMessage(publish(2L, "a", "1"));
+    stream.onMessage(publish(1L, "a", "2"));
+    runWriter();
+
+    assertThat(written).containsExactly("a=1", "a=2");
+    assertThat(brokers).containsExactly(2L, 1L);
+  }
+
+  @Test
+  void disconnect_closesStreamOnOverflow() {
+    SseStream stream = stream(OverflowPolicy.DISCONNECT);
+
+    for (int i = 1; i <= 3; i++) {
+      stream.onMessage(publish("a", String.valueOf(i)));
+    }
+    runWriter();
+
+    assertThat(written).isEmpty();
+    verify(emitter).complete();
+  }
+
+  private SseStream stream(OverflowPolicy policy) {
+    return SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter).capacity(2)
+        .overflowPolicy(policy).writer(writerTasks::add).sink(this::write).build();
+  }
+
+  private void write(List<InboundMessage> batch) {
+    batches.add(batch.size());
+    batch.forEach(message -> brokers.add(message.brokerId()));
+    batch.forEach(message -> written.add(message.publish().getTopic() + "=" + new String(
+        message.publish().getPayloadAsBytes(), StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void flushWindow_writesQueuedMessagesAsOneBatch() {
+    ScheduledExecutorService flushScheduler = mock(ScheduledExecutorService.class);
+    SseStream stream = SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter)
+        .capacity(16).overflowPolicy(OverflowPolicy.DROP_OLDEST).writer(writerTasks::add)
+        .sink(this::write).flushWindowMs(5).flushMaxBytes(65536).flushScheduler(flushScheduler)
+        .build();
+
+    for (int i = 1; i <= 3; i++) {
+      stream.onMessage(publish("a", String.valueOf(i)));
+    }
+    assertThat(writerTasks).isEmpty();
+    ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+    verify(flushScheduler).schedule(flush.capture(), eq(5L), eq(TimeUnit.MILLISECONDS));
+    flush.getValue().run();
+    runWriter();
+
+    assertThat(written).containsExactly("a=1", "a=2", "a=3");
+    assertThat(batches).containsExactly(3);
+  }
+
+  @Test
+  void flushWindow_flushesImmediatelyWhenMaxBytesQueued() {
+    ScheduledExecutorService flushScheduler = mock(ScheduledExecutorService.class);
+    SseStream stream = SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter)
+        .capacity(16).overflowPolicy(OverflowPolicy.DROP_OLDEST).writer(writerTasks::add)
+        .sink(this::write).flushWindowMs(5).flushMaxBytes(4).flushScheduler(flushScheduler)
+        .build();
+
+    stream.onMessage(publish("a", "1234"));
+
+    assertThat(writerTasks).hasSize(1);
+  }
+
+  @Test
+  void conflate_writesNewestMessagePerTopicOnTick() {
+    ScheduledExecutorService flushScheduler = mock(ScheduledExecutorService.class);
+    SseStream stream = conflatingStream(flushScheduler);
+
+    stream.onMessage(publish("a", "1"));
+    stream.onMessage(publish("b", "1"));
+    stream.onMessage(publish("a", "2"));
+    stream.onMessage(publish("a", "3"));
+    assertThat(writerTasks).isEmpty();
+    assertThat(stream.stats().queueDepth()).isEqualTo(2);
+    ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+    verify(flushScheduler).schedule(tick.capture(), eq(250L), eq(TimeUnit.MILLISECONDS));
+    tick.getValue().run();
+    runWriter();
+
+    assertThat(written).containsExactly("a=3", "b=1");
+    assertThat(batches).containsExactly(2);
+    assertThat(stream.stats().dropped()).isEqualTo(2);
+  }
+
+  @Test
+  void conflate_keepsNewestMessagePerBrokerAndTopic() {
+    ScheduledExecutorService flushScheduler = mock(ScheduledExecutorService.class);
+    SseStream stream = conflatingStream(flushScheduler);
+
+    stream.onMessage(publish(1L, "a", "1"));
+    stream.onMessage(publish(2L, "a", "1"));
+    stream.onMessage(publish(1L, "a", "2"));
+    ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+    verify(flushScheduler).schedule(tick.capture(), eq(250L), eq(TimeUnit.MILLISECONDS));
+    tick.getValue().run();
+    runWriter();
+
+    assertThat(written).containsExactly("a=2", "a=1");
+    assertThat(brokers).containsExactly(1L, 2L);
+  }
+
+  @Test
+  void conflate_keepsConflatingWhileSnapshotIsUnwritten() {
+    ScheduledExecutorService flushScheduler = mock(ScheduledExecutorService.class);
+    SseStream stream = conflatingStream(flushScheduler);
+    ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+
+    stream.onMessage(publish("a", "1"));
+    verify(flushScheduler).schedule(tick.capture(), eq(250L), eq(TimeUnit.MILLISECONDS));
+    tick.getValue().run();
+    stream.onMessage(publish("a", "2"));
+    stream.onMessage(publish("a", "3"));
+    verify(flushScheduler, times(2)).schedule(tick.capture(), eq(250L),
+        eq(TimeUnit.MILLISECONDS));
+    tick.getValue().run();
+    runWriter();
+    assertThat(written).containsExactly("a=1");
+    verify(flushScheduler, times(3)).schedule(tick.capture(), eq(250L),
+        eq(TimeUnit.MILLISECONDS));
+    tick.getValue().run();
+    runWriter();
+
+    assertThat(written).containsExactly("a=1", "a=3");
+  }
+
+  @Test
+  void manualAck_releasesMessagesOnlyOnceWrittenOrDropped() {
+    SseStream stream = stream(OverflowPolicy.DROP_OLDEST);
+    List<String> acked = new ArrayList<>();
+    InboundMessage[] messages = new InboundMessage[3];
+    for (int i = 0; i < messages.length; i++) {
+      String name = "m" + i;
+      messages[i] = new InboundMessage(i, Mqtt5Publish.builder().topic("a")
+          .payload(name.getBytes(StandardCharsets.UTF_8)).build(), () -> acked.add(name));
+      stream.onMessage(messages[i]);
+      // The dispatcher drops its own hold once fan-out is done
+      messages[i].release();
+    }
+    assertThat(acked).containsExactly("m0");
+
+    runWriter();
+    assertThat(acked).containsExactly("m0", "m1", "m2");
+  }
+
+  @Test
+  void matcher_dropsRejectedMessagesBeforeTheyTakeQueueSlots() {
+    SseStream stream = SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter)
+        .capacity(2).overflowPolicy(OverflowPolicy.DROP_OLDEST).writer(writerTasks::add)
+        .sink(this::write).matcher(message -> message.publish().getTopic().toString().equals("a"))
+        .build();
+    List<String> acked = new ArrayList<>();
+
+    stream.onMessage(publish("a", "1"));
+    stream.onMessage(publish("a", "2"));
+    for (int i = 1; i <= 3; i++) {
+      InboundMessage rejected = new InboundMessage(0, Mqtt5Publish.builder().topic("b").build(),
+          () -> acked.add("b"));
+      stream.onMessage(rejected);
+      rejected.release();
+    }
+    runWriter();
+
+    assertThat(written).containsExactly("a=1", "a=2");
+    assertThat(stream.stats().dropped()).isZero();
+    assertThat(acked).containsExactly("b", "b", "b");
+  }
+
+  @Test
+  void matcher_appliesBeforeConflation() {
+    ScheduledExecutorService flushScheduler = mock(ScheduledExecutorService.class);
+    SseStream stream = SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter)
+        .capacity(1).overflowPolicy(OverflowPolicy.DROP_OLDEST).writer(writerTasks::add)
+        .sink(this::write).flushMaxBytes(65536).flushScheduler(flushScheduler).conflateMs(250)
+        .matcher(message -> message.publish().getTopic().toString().equals("a")).build();
+
+    stream.onMessage(publish("b", "1"));
+    stream.onMessage(publish("a", "1"));
+    stream.onMessage(publish("b", "2"));
+    ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+    verify(flushScheduler).schedule(tick.capture(), eq(250L), eq(TimeUnit.MILLISECONDS));
+    tick.getValue().run();
+    runWriter();
+
+    assertThat(written).containsExactly("a=1");
+    assertThat(stream.stats().dropped()).isZero();
+  }
+
+  private SseStream conflatingStream(ScheduledExecutorService flushScheduler) {
+    return SseStream.builder().id("s-1").brokerId(1L).topic("#").emitter(emitter).capacity(16)
+        .overflowPolicy(OverflowPolicy.DROP_OLDEST).writer(writerTasks::add).sink(this::write)
+        .flushMaxBytes(65536).flushScheduler(flushScheduler).conflateMs(250).build();
+  }
+
+  private void runWriter() {
+    Runnable task;
+    while ((task = writerTasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+  private static InboundMessage publish(Long brokerId, String topic, String payload) {
+    return new InboundMessage(0, brokerId, Mqtt5Publish.builder().topic(topic)
+        .payload(payload.getBytes(StandardCharsets.UTF_8)).build(), null);
+  }
+
+  private static InboundMessage publish(String topic, String payload) {
+    return new InboundMessage(0, Mqtt5Publish.builder().topic(topic)
+        .payload(payload.getBytes(StandardCharsets.UTF_8)).build());
+  }
+}